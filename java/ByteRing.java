@@ -0,0 +1,70 @@
+/*
+    A fixed size ring buffer of bytes between one thread putting them in
+    and one taking them out, for streaming sound.  put() waits while it is
+    full and take() waits while it is empty.  close() means no more is
+    coming (take() returns what is left, then -1); abort() throws away
+    whatever is in it and wakes everybody up.
+*/
+
+public class ByteRing {
+    private byte[]	buf;
+    private int		start = 0;		// Next byte to take.
+    private int		count = 0;		// Bytes in the ring.
+    private boolean	closed = false;
+    private boolean	aborted = false;
+
+    public ByteRing( int size ) {
+        buf = new byte[size];
+    }
+
+    // Add len bytes, waiting for room as needed.  Return false if aborted.
+    public synchronized boolean put( byte[] src, int off, int len ) {
+        while ( len>0 ) {
+            while ( count==buf.length && !aborted ) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    aborted = true;
+                }
+            }
+            if ( aborted ) return false;
+            int end = (start+count)%buf.length;
+            int n = Math.min( len, Math.min(buf.length-count, buf.length-end) );
+            System.arraycopy( src, off, buf, end, n );
+            count += n;
+            off += n;
+            len -= n;
+            notifyAll();
+        }
+        return true;
+    }
+
+    // Take up to len bytes, waiting until there are some.  Return how
+    // many, or -1 once it is closed and empty (or aborted).
+    public synchronized int take( byte[] dst, int off, int len ) throws InterruptedException {
+        while ( count==0 && !closed && !aborted ) wait();
+        if ( aborted || count==0 ) return -1;
+        int n = Math.min( len, Math.min(count, buf.length-start) );
+        System.arraycopy( buf, start, dst, off, n );
+        start = (start+n)%buf.length;
+        count -= n;
+        notifyAll();
+        return n;
+    }
+
+    // Nothing more will be put.
+    public synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+    // Give up: drop what is here and wake anyone waiting.
+    public synchronized void abort() {
+        aborted = true;
+        count = 0;
+        notifyAll();
+    }
+    // Return how many bytes are waiting.
+    public synchronized int available() {
+        return count;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+    Reads CSV straight off a Reader, a field at a time, for loading the
+    world files.  Unlike CSVTokenizer it isn't tied to single lines, so a
+    quoted description may run over several lines, and it doesn't build a
+    new StringBuffer and String for every field: each field is unquoted
+    into one reused char array and can be looked at in place (field(),
+    fieldIs()), turned into an int with no String in between (nextInt()),
+    or into a String only when one is really wanted (nextString(), or
+    nextInterned() for text that repeats, like item names).
+
+    A record is read like this:
+
+        while ( csv.nextRecord() ) {
+            int exit = csv.nextInt();
+            String name = csv.nextInterned();
+            ...
+        }
+
+    Blank lines are skipped, a doubled quote inside quotes is a quote,
+    and fields left over at the end of a record are ignored.
+*/
+
+import java.io.*;
+
+public class CSVReader {
+    private Reader	in;
+    private char[]	buf = new char[8192];		// Chars read but not used yet.
+    private int		pos = 0;
+    private int		limit = 0;
+    private char[]	field = new char[256];		// The current field, unquoted.
+    private int		fieldLength = 0;
+    private boolean	endOfRecord = true;		// No more fields in this record?
+    private int		line = 1;			// For error messages.
+    private Field	view = new Field();
+
+    private String[]	strings = new String[64];	// nextInterned()'s table.
+    private int		numStrings = 0;
+
+    // Read CSV from a Reader (it does its own buffering).
+    public CSVReader( Reader in ) {
+        this.in = in;
+    }
+
+    // Move to the next record, skipping what is left of this one.
+    // Return false at the end of the input.
+    public boolean nextRecord() throws IOException {
+        while ( !endOfRecord ) nextField();
+        while (true) {
+            int ch = read();
+            if ( ch<0 ) return false;
+            if ( ch=='\n' ) {
+                line++;
+            } else if ( ch!='\r' ) {
+                pos--;					// Give it back.
+                endOfRecord = false;
+                return true;
+            }
+        }
+    }
+
+    // Read the next field of this record.  Return false if there isn't one.
+    public boolean nextField() throws IOException {
+        if ( endOfRecord ) return false;
+        fieldLength = 0;
+        boolean quoted = false;
+        while (true) {
+            int ch = read();
+            if ( ch<0 ) {
+                endOfRecord = true;
+                return true;
+            }
+            if ( ch=='"' ) {
+                if ( quoted && peek()=='"' ) {	// "" inside quotes.
+                    pos++;
+                    append( '"' );
+                } else {
+                    quoted = !quoted;
+                }
+            } else if ( quoted ) {
+                if ( ch=='\n' ) line++;
+                append( (char)ch );
+            } else if ( ch==',' ) {
+                return true;
+            } else if ( ch=='\n' || ch=='\r' ) {
+                pos--;				// Leave it for nextRecord().
+                endOfRecord = true;
+                return true;
+            } else {
+                append( (char)ch );
+            }
+        }
+    }
+
+    // Return the current field.  Only good until the next field is read.
+    public CharSequence field() {
+        return view;
+    }
+    // Is the current field this text (ignoring case)?
+    public boolean fieldIs( String text ) {
+        if ( text.length()!=fieldLength ) return false;
+        for ( int i=0; i<fieldLength; i++ ) {
+            char a = text.charAt( i );
+            char b = field[i];
+            if ( a!=b && Character.toUpperCase(a)!=Character.toUpperCase(b) ) return false;
+        }
+        return true;
+    }
+
+    // Read the next field as a String.
+    public String nextString() throws IOException {
+        require();
+        return new String( field, 0, fieldLength );
+    }
+    // Read the next field as a String, handing back the same String every
+    // time the same text comes up in this file.
+    public String nextInterned() throws IOException {
+        require();
+        int hash = 0;
+        for ( int i=0; i<fieldLength; i++ ) hash = hash*31 + field[i];
+        int mask = strings.length-1;
+        for ( int i=hash&mask; ; i=(i+1)&mask ) {
+            String s = strings[i];
+            if ( s==null ) {
+                s = new String( field, 0, fieldLength );
+                strings[i] = s;
+                if ( ++numStrings*2>strings.length ) grow();
+                return s;
+            }
+            if ( s.length()==fieldLength && sameAsField(s) ) return s;
+        }
+    }
+    // Read the next field as a (decimal) int.
+    public int nextInt() throws IOException {
+        require();
+        int i = 0;
+        while ( i<fieldLength && field[i]==' ' ) i++;
+        boolean negative = i<fieldLength && field[i]=='-';
+        if ( negative ) i++;
+        if ( i>=fieldLength ) throw error( "Expected a number" );
+        long value = 0;
+        for ( ; i<fieldLength && field[i]!=' '; i++ ) {
+            int digit = field[i]-'0';
+            if ( digit<0 || digit>9 ) throw error( "Bad number \""+view+"\"" );
+            value = value*10 + digit;
+            if ( value>(long)Integer.MAX_VALUE+1 ) throw error( "Number too big" );
+        }
+        for ( ; i<fieldLength; i++ ) {
+            if ( field[i]!=' ' ) throw error( "Bad number \""+view+"\"" );
+        }
+        if ( negative ) value = -value;
+        if ( value>Integer.MAX_VALUE ) throw error( "Number too big" );
+        return (int)value;
+    }
+
+    // Return the line being read (for error messages).
+    public int getLine() {
+        return line;
+    }
+    // Return an IOException saying where the reader is.
+    public IOException error( String message ) {
+        return new IOException( message+" at line "+line );
+    }
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void require() throws IOException {
+        if ( !nextField() ) throw error( "Missing field" );
+    }
+    private boolean sameAsField( String s ) {
+        for ( int i=0; i<fieldLength; i++ ) {
+            if ( s.charAt(i)!=field[i] ) return false;
+        }
+        return true;
+    }
+    private void grow() {
+        String[] old = strings;
+        strings = new String[ old.length*2 ];
+        int mask = strings.length-1;
+        for ( int j=0; j<old.length; j++ ) {
+            String s = old[j];
+            if ( s==null ) continue;
+            int i = s.hashCode()&mask;		// Same hash as nextInterned() uses.
+            while ( strings[i]!=null ) i = (i+1)&mask;
+            strings[i] = s;
+        }
+    }
+    private void append( char ch ) {
+        if ( fieldLength==field.length ) {
+            char[] bigger = new char[ field.length*2 ];
+            System.arraycopy( field, 0, bigger, 0, fieldLength );
+            field = bigger;
+        }
+        field[fieldLength++] = ch;
+    }
+    private int read() throws IOException {
+        if ( pos==limit && !fill() ) return -1;
+        return buf[pos++];
+    }
+    private int peek() throws IOException {
+        if ( pos==limit && !fill() ) return -1;
+        return buf[pos];
+    }
+    private boolean fill() throws IOException {
+        int n = in.read( buf, 0, buf.length );
+        if ( n<=0 ) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    // The current field as a CharSequence, with no copying.
+    private class Field implements CharSequence {
+        public int length() {
+            return fieldLength;
+        }
+        public char charAt( int index ) {
+            return field[index];
+        }
+        public CharSequence subSequence( int start, int end ) {
+            return new String( field, start, end-start );
+        }
+        public String toString() {
+            return new String( field, 0, fieldLength );
+        }
+    }
+}
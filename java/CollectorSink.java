@@ -0,0 +1,46 @@
+/*
+    Output that is simply kept: every response, in order.  Handy for tools,
+    benchmarks and scripted play, where there is nobody to show it to.
+*/
+
+import java.util.Vector;
+
+public class CollectorSink extends OutputSink {
+    private Vector	responses = new Vector();	// One String per flush().
+    private boolean	keep;
+    private int		count = 0;			// Responses seen, kept or not.
+
+    // Keep every response.
+    public CollectorSink() {
+        this( true );
+    }
+    // Keep every response, or (keep==false) just count them.
+    public CollectorSink( boolean keep ) {
+        this.keep = keep;
+    }
+
+    protected void write( StringBuffer text ) {
+        count++;
+        if ( keep ) responses.add( text.toString() );
+    }
+
+    // Return how many responses have come through.
+    public int size() {
+        return count;
+    }
+    // Return one response (if they are being kept).
+    public String getResponse( int index ) {
+        return (String)responses.elementAt( index );
+    }
+    // Return everything written, as one string.
+    public String getText() {
+        StringBuffer all = new StringBuffer();
+        for ( int i=0; i<responses.size(); i++ ) all.append( (String)responses.elementAt(i) );
+        return all.toString();
+    }
+    // Forget everything written so far.
+    public void clear() {
+        responses.clear();
+        count = 0;
+    }
+}
@@ -0,0 +1,188 @@
+/*
+    Splits a command into its parts without creating any objects.  Instead
+    of handing back new Strings, it remembers where each part starts and
+    ends in the text it was given, and lets the verbs compare against those
+    spots directly.  One of these is kept per session and reused for every
+    command.
+
+    A command looks like:
+
+        VERB [noun phrase] [PREPOSITION [object phrase]]
+
+    such as "take old book", "look at painting" or "put book in box".  A
+    leading "the", "a" or "an" is skipped in either phrase.  When the
+    preposition comes right after the verb ("look at painting") the words
+    after it are the noun, up to a second preposition if there is one
+    ("look at slip of paper", "look at book with lamp").  The head of a phrase is its last word, so
+    "old book" still matches an item with the keyword "book".
+*/
+public class CommandTokenizer {
+    private static final String[] PREPOSITIONS = {
+        "IN", "INTO", "ON", "ONTO", "AT", "TO", "WITH", "FROM", "UNDER", "BEHIND"
+    };
+    private static final String[] ARTICLES = { "THE", "A", "AN" };
+
+    private CharSequence	source;		// What the player typed.
+    private CharSequence	nounSource;	// Where the noun comes from (source, or an alias).
+    private int	verbStart, verbEnd;
+    private int	nounStart, nounEnd;		// Whole noun phrase.
+    private int	headStart, headEnd;		// Last word of the noun phrase.
+    private int	prepStart, prepEnd;
+    private int	objectStart, objectEnd;		// Whole object phrase.
+    private int	objectHeadStart, objectHeadEnd;	// Last word of the object phrase.
+    private boolean	inObject;			// Past the preposition ending the noun phrase.
+
+    // Break up a new command, forgetting the last one.
+    public void tokenize( CharSequence text ) {
+        source = text;
+        nounSource = text;
+        verbStart = verbEnd = -1;
+        nounStart = nounEnd = headStart = headEnd = -1;
+        prepStart = prepEnd = -1;
+        objectStart = objectEnd = objectHeadStart = objectHeadEnd = -1;
+        inObject = false;
+
+        int length = text.length();
+        int i = 0;
+        while (true) {
+            while ( i<length && Character.isWhitespace(text.charAt(i)) ) i++;
+            if ( i>=length ) break;
+            int start = i;
+            while ( i<length && !Character.isWhitespace(text.charAt(i)) ) i++;
+            word( start, i );
+        }
+    }
+
+    // Sort one word into its slot.
+    private void word( int start, int end ) {
+        if ( verbStart<0 ) {			// First word is always the verb.
+            verbStart = start;
+            verbEnd = end;
+        } else if ( prepStart<0 && isOneOf(PREPOSITIONS, source, start, end) ) {
+            prepStart = start;
+            prepEnd = end;
+            inObject = nounStart>=0;
+        } else if ( !inObject ) {		// Noun phrase.
+            if ( prepStart>=0 && nounStart>=0 && isOneOf(PREPOSITIONS, source, start, end) ) {
+                inObject = true;		// "look at book WITH lamp"
+                return;
+            }
+            if ( nounStart<0 && isOneOf(ARTICLES, source, start, end) ) return;
+            if ( nounStart<0 ) nounStart = start;
+            nounEnd = end;
+            headStart = start;
+            headEnd = end;
+        } else {				// Object phrase.
+            if ( objectStart<0 && isOneOf(ARTICLES, source, start, end) ) return;
+            if ( objectStart<0 ) objectStart = start;
+            objectEnd = end;
+            objectHeadStart = start;
+            objectHeadEnd = end;
+        }
+    }
+
+    // Replace the noun, such as when N is an alias for GO NORTH.
+    public void setNoun( String noun ) {
+        nounSource = noun;
+        nounStart = headStart = 0;
+        nounEnd = headEnd = noun.length();
+    }
+
+    // Return what was typed.
+    public CharSequence getSource() {
+        return source;
+    }
+    // Was anything other than blanks typed?
+    public boolean hasVerb() {
+        return verbStart>=0;
+    }
+    // Where the verb is in getSource().
+    public int getVerbStart() {
+        return verbStart;
+    }
+    public int getVerbEnd() {
+        return verbEnd;
+    }
+    // Is there a noun?
+    public boolean hasNoun() {
+        return nounStart>=0;
+    }
+    // Is there a preposition?
+    public boolean hasPreposition() {
+        return prepStart>=0;
+    }
+    // Is there an object (the "box" in "put book in box")?
+    public boolean hasObject() {
+        return objectStart>=0;
+    }
+
+    // Where the noun is.  It may not be in getSource() when an alias
+    // supplied it, so look for it in getNounSource().
+    public CharSequence getNounSource() {
+        return nounSource;
+    }
+    public int getNounStart() {
+        return nounStart;
+    }
+    public int getNounEnd() {
+        return nounEnd;
+    }
+    // Where the last word of the noun phrase is in getNounSource().
+    public int getHeadStart() {
+        return headStart;
+    }
+    public int getHeadEnd() {
+        return headEnd;
+    }
+
+    // Is the verb this word?  (Case does not matter.)
+    public boolean verbIs( String word ) {
+        return hasVerb() && same( word, source, verbStart, verbEnd );
+    }
+    // Is the noun this word, either as a whole or by its last word?
+    public boolean nounIs( String word ) {
+        return hasNoun() && ( same(word, nounSource, nounStart, nounEnd) ||
+                              same(word, nounSource, headStart, headEnd) );
+    }
+    // Is the preposition this word?
+    public boolean prepositionIs( String word ) {
+        return hasPreposition() && same( word, source, prepStart, prepEnd );
+    }
+    // Is the object this word, either as a whole or by its last word?
+    public boolean objectIs( String word ) {
+        return hasObject() && ( same(word, source, objectStart, objectEnd) ||
+                                same(word, source, objectHeadStart, objectHeadEnd) );
+    }
+
+    // These make new Strings, so keep them off the hot path.
+    public String getVerb() {
+        return hasVerb() ? source.subSequence( verbStart, verbEnd ).toString() : null;
+    }
+    public String getNoun() {
+        return hasNoun() ? nounSource.subSequence( nounStart, nounEnd ).toString() : null;
+    }
+    public String getPreposition() {
+        return hasPreposition() ? source.subSequence( prepStart, prepEnd ).toString() : null;
+    }
+    public String getObject() {
+        return hasObject() ? source.subSequence( objectStart, objectEnd ).toString() : null;
+    }
+
+    // Case blind compare of a word against part of some text.
+    static boolean same( String word, CharSequence text, int start, int end ) {
+        if ( word.length()!=end-start ) return false;
+        for ( int i=0; i<word.length(); i++ ) {
+            char a = word.charAt( i );
+            char b = text.charAt( start+i );
+            if ( a!=b && Character.toUpperCase(a)!=Character.toUpperCase(b) ) return false;
+        }
+        return true;
+    }
+    // Is part of some text one of a list of (upper case) words?
+    private static boolean isOneOf( String[] words, CharSequence text, int start, int end ) {
+        for ( int i=0; i<words.length; i++ ) {
+            if ( same(words[i], text, start, end) ) return true;
+        }
+        return false;
+    }
+}
@@ -36,6 +36,8 @@ public class Exit
     }
     // Create a functional exit.
     public Exit( int direction, Location leadsTo ) {
+        // Assign direction.
+        this.direction = direction;
         // Assign direction name.
         if (direction <= dirName.length ) directionName = dirName[direction];
         // Assign direction abbreviation.
@@ -45,11 +47,22 @@ public class Exit
     }
     // Assign direction.
     public void setDirection( int direction ) {
+        this.direction = direction;
         // Assign direction name.
         if (direction <= dirName.length ) directionName = dirName[direction];
         // Assign direction abbreviation.
         if (direction <= shortDirName.length ) shortDirectionName = shortDirName[direction];
     }
+    // Turn a direction typed by the player (between start and end of text)
+    // into one of the constants above, or UNDEFINED.  "North" and "N" both
+    // work, in any case.
+    public static int parseDirection( CharSequence text, int start, int end ) {
+        for ( int i=NORTH; i<=DOWN; i++ ) {
+            if ( CommandTokenizer.same(dirName[i], text, start, end) ||
+                 CommandTokenizer.same(shortDirName[i], text, start, end) ) return i;
+        }
+        return UNDEFINED;
+    }
     // Return direction.
     public int getDirection() {
         return direction;
@@ -0,0 +1,472 @@
+/*
+    The game itself, without any GUI attached.  Commands go in as a line of
+    text, the response comes out as text appended to a buffer, and all of
+    the state lives in the GameSession that is passed in.  The engine holds
+    no state of its own, so one instance can be shared by every session in
+    the JVM (the applet, a console, a server...).
+*/
+
+import java.io.*;
+import java.net.URL;
+import java.util.List;
+import java.util.Vector;
+
+public class GameEngine {
+    private GameMetrics	metrics = GameMetrics.get();	// Per verb counters.
+    private VerbTable	verbs = new VerbTable( metrics );	// Word -> command handler.
+
+    // Create an engine that knows the standard verbs.
+    public GameEngine() {
+        verbs.register( "GO", new GoVerb() );
+        verbs.register( "INVENTORY", new InventoryVerb() );
+        verbs.register( "GET", new GetVerb() );
+        verbs.register( "DROP", new DropVerb() );
+        verbs.register( "VERBOSE", new VerboseVerb() );
+        verbs.register( "LOOK", new LookVerb() );
+        verbs.register( "SAVE", new SaveVerb() );
+        verbs.register( "RESTORE", new RestoreVerb() );
+        verbs.register( "TRAVEL", new TravelVerb() );
+
+        verbs.alias( "N", "GO", "NORTH" );
+        verbs.alias( "S", "GO", "SOUTH" );
+        verbs.alias( "W", "GO", "WEST" );
+        verbs.alias( "E", "GO", "EAST" );
+        verbs.alias( "U", "GO", "UP" );
+        verbs.alias( "D", "GO", "DOWN" );
+        verbs.alias( "I", "INVENTORY" );
+        verbs.alias( "TAKE", "GET" );
+        verbs.alias( "L", "LOOK" );
+        verbs.alias( "EXAMINE", "LOOK" );
+    }
+
+    // Return the verb table, so new commands can be added.
+    public VerbTable getVerbs() {
+        return verbs;
+    }
+
+    // Process one line of player input and send the response to out in one piece.
+    public void textEntered( GameSession session, String line, OutputSink out )
+    {
+        textEntered( session, line, out.getBuffer() );
+        out.flush();
+    }
+    // Process one line of player input against a session.
+    public void textEntered( GameSession session, String line, StringBuffer desc )
+    {
+        CommandTokenizer command = session.getTokenizer();
+
+        if ( line.length()==0 ) return;	// Ignore NULL lines...
+
+        command.tokenize( line );
+        if ( !command.hasVerb() ) return;	// Nothing but whitespace.
+
+        desc.append( "> " ).append( line ).append( '\n' );
+
+        // Handle verbs (commands)...
+        VerbTable.Entry entry = verbs.lookup( line, command.getVerbStart(), command.getVerbEnd() );
+        if ( !metrics.isEnabled() ) {
+            execute( entry, session, command, desc );
+            return;
+        }
+        Location room = session.getLocation();
+        long allocated = metrics.allocatedBytes();
+        long start = System.nanoTime();
+        execute( entry, session, command, desc );
+        metrics.command( entry==null ? metrics.getUnknown() : entry.getStats(), room,
+                         System.nanoTime()-start, allocated );
+    }
+    private void execute( VerbTable.Entry entry, GameSession session, CommandTokenizer command,
+                          StringBuffer desc )
+    {
+        if ( entry==null ) {
+            desc.append( "I have no idea what you are trying to do.\n" );
+            return;
+        }
+        if ( entry.getNoun()!=null ) command.setNoun( entry.getNoun() );
+        entry.getVerb().execute( session, command, desc );
+    }
+
+    // GO <direction>, and N/S/W/E/U/D.  GO TO <room> is TRAVEL.
+    class GoVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            if ( command.prepositionIs("TO") ) {
+                travel.execute( session, command, desc );
+                return;
+            }
+            CreateWorld player = session.getPlayer();
+            boolean moved = false;
+            int direction = Exit.UNDEFINED;
+            if ( command.hasNoun() ) {
+                CharSequence text = command.getNounSource();
+                direction = Exit.parseDirection( text, command.getNounStart(), command.getNounEnd() );
+                if ( direction==Exit.UNDEFINED ) {
+                    direction = Exit.parseDirection( text, command.getHeadStart(), command.getHeadEnd() );
+                }
+            }
+            Exit an_exit = player.getLocation().getExit( direction );
+            if ( an_exit!=null ) {
+                // Set location to the location pointed to by exit.
+                player.setLocation( an_exit.getLeadsTo() );
+                moved = true;
+            }
+/*
+            // If that didn't work, we check for ActionItems.
+            for (Enumeration e = player.getItems(player.getLocation()).elements();
+                 e.hasMoreElements(); )
+            {
+                ActionItem an_item = (ActionItem)e.nextElement();
+
+                if ( an_item.isSpecial() && an_item.getKeyword().equalsIgnoreCase(noun) ) {
+                        // Set location to the location pointed to by exit
+                        player.setLocation( an_item.getLeadsTo() );
+                        moved = true;
+                }
+            }
+*/
+            if ( !moved ) desc.append( "You can't go that way.\n" );
+            /* See if we have to redisplay the location stuff. */
+            if ( moved==true) showLocation( session, desc );
+        }
+    }
+
+    // TRAVEL [TO] <room>, GO TO <room>: take the shortest way to the
+    // nearest room of that name (see Routes), in one go.
+    static final int LISTED_MOVES = 12;	// Longer journeys aren't spelled out.
+    static final String[] MOVES = { "", "north", "south", "west", "east", "up", "down" };
+    private TravelVerb	travel = new TravelVerb();
+
+    class TravelVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            if ( !command.hasNoun() ) {
+                desc.append( "Where do you want to go?\n" );
+                return;
+            }
+            CreateWorld player = session.getPlayer();
+            WorldTemplate world = player.getWorld();
+            Routes routes = world.getRoutes();
+            int from = player.getLocation().getIndex();
+            String name = command.getNoun();
+            int to = routes.findRoom( name, from );
+            if ( to<0 ) {
+                desc.append( "I don't know of anywhere called " ).append( name ).append( ".\n" );
+                return;
+            }
+            if ( to==0 ) {
+                desc.append( "You can't find a way there from here.\n" );
+                return;
+            }
+            if ( to==from ) {
+                desc.append( "You're already there.\n" );
+                return;
+            }
+            int moves = routes.distance( from, to );
+            if ( moves>LISTED_MOVES ) {
+                desc.append( "You make your way there in " ).append( moves ).append( " moves.\n" );
+            } else {
+                desc.append( "You go " );
+                int room = from;
+                for ( int i=0; i<moves; i++ ) {
+                    int direction = routes.nextStep( room, to );
+                    if ( i>0 ) desc.append( i<moves-1 ? ", " : " and " );
+                    desc.append( MOVES[direction] );
+                    room = world.getExitTarget( room, direction );
+                }
+                desc.append( ".\n" );
+            }
+            player.setLocation( world.getLocation(to) );
+            showLocation( session, desc );
+        }
+    }
+
+    // INVENTORY, I.
+    class InventoryVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            desc.append( "You are carrying " );
+            boolean items = false;
+            List carried = session.getPlayer().getItems();
+            for ( int i=0; i<carried.size(); i++ )
+            {
+                Item an_item = (Item)carried.get( i );
+                boolean more = i<carried.size()-1;
+                if ( items==true && !more ) desc.append( "and " );
+                desc.append( an_item.getName() );
+                items = true;
+                if ( more ) { // More items?
+                    desc.append( ", " );
+                } else {
+                    desc.append( ".\n" );
+                }
+            }
+            if ( !items ) desc.append( "nothing.\n" );
+        }
+    }
+
+    // GET/TAKE <item>, or ALL.
+    class GetVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            CreateWorld player = session.getPlayer();
+            Location here = player.getLocation();
+            boolean items = false;
+            if ( command.nounIs("ALL") ) {
+                // Say what happens to each thing here, then move the lot in one go.
+                List all = player.getItems( here );
+                for ( int i=0; i<all.size(); i++ ) {
+                    Item an_item = (Item)all.get( i );
+                    if ( an_item.isGetable()==true ) {
+                        desc.append( an_item.getKeyword() ).append( " taken.\n" );
+                    } else {
+                        desc.append( "You can't get the " ).append( an_item.getKeyword() ).append( ".\n" );
+                    }
+                    items = true;
+                }
+                player.takeAll();
+            } else if ( command.hasNoun() ) {
+                /* See if what they want to take is here. */
+                Vector found = matching( player.getInventory(here), command );
+                if ( found!=null ) {
+                    Object[] same = found.toArray();	// We are about to change found.
+                    for ( int i=0; i<same.length; i++ ) {
+                        Item an_item = (Item)same[i];
+                        if ( an_item.isGetable()==true ) {
+                            player.removeItem( here, an_item );
+                            player.addItem( an_item );
+                            desc.append( an_item.getKeyword() ).append( " taken.\n" );
+                        } else {
+                            desc.append( "You can't get the " ).append( an_item.getKeyword() ).append( ".\n" );
+                        }
+                    }
+                    items = true;
+                }
+            }
+            if ( !items ) desc.append( "I don't see that here.\n" );
+        }
+    }
+
+    // DROP <item>, or ALL.
+    class DropVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            CreateWorld player = session.getPlayer();
+            Vector dropped = null;
+            if ( command.nounIs("ALL") ) {
+                dropped = player.dropAll();
+            } else if ( command.hasNoun() ) {
+                /* See if they are carrying what they want to drop. */
+                Vector found = matching( player.getInventory(), command );
+                if ( found!=null ) {
+                    dropped = new Vector( found );	// We are about to change found.
+                    for ( int i=0; i<dropped.size(); i++ ) {
+                        Item an_item = (Item)dropped.elementAt( i );
+                        player.removeItem( an_item );
+                        player.addItem( player.getLocation(), an_item );
+                    }
+                }
+            }
+            if ( dropped==null || dropped.isEmpty() ) {
+                desc.append( "You don't seem to be carrying that.\n" );
+                return;
+            }
+            for ( int i=0; i<dropped.size(); i++ ) {
+                desc.append( ((Item)dropped.elementAt(i)).getKeyword() ).append( " dropped.\n" );
+            }
+        }
+    }
+
+    // VERBOSE [ON/OFF].
+    class VerboseVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            if ( !command.hasNoun() || command.nounIs("ON") ) {
+                session.setVerbose( true );
+            } else if ( command.nounIs("OFF") ) {
+                session.setVerbose( false );
+            }
+            if ( session.isVerbose()==true ) {
+                desc.append( "Verbose mode is ON.\n" );
+            } else {
+                desc.append( "Verbose mode is OFF.\n" );
+            }
+        }
+    }
+
+    // SAVE [name].  Saved games are kept with the session.
+    class SaveVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            String name = command.hasNoun() ? command.getNoun().toUpperCase() : "";
+            session.putSaved( name, SaveGame.save(session) );
+            if ( name.length()==0 ) {
+                desc.append( "Game saved.\n" );
+            } else {
+                desc.append( "Game saved as " ).append( name ).append( ".\n" );
+            }
+        }
+    }
+
+    // RESTORE [name].
+    class RestoreVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            String name = command.hasNoun() ? command.getNoun().toUpperCase() : "";
+            byte[] game = session.getSaved( name );
+            if ( game==null ) {
+                desc.append( name.length()==0 ? "You haven't saved a game.\n"
+                                                : "There's no game saved as "+name+".\n" );
+                return;
+            }
+            try {
+                SaveGame.restore( session, game );
+            } catch (IOException e) {
+                desc.append( "That saved game can't be restored: " ).append( e.getMessage() ).append( ".\n" );
+                return;
+            }
+            desc.append( "Game restored.\n" );
+            session.getPlayer().beenHere( session.getLocation(), false );
+            showLocation( session, desc );
+        }
+    }
+
+    // LOOK/EXAMINE/L [item].
+    class LookVerb implements Verb {
+        public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+            CreateWorld player = session.getPlayer();
+            if ( !command.hasNoun() ) { /* are we just looking at the room? */
+                player.beenHere(player.getLocation(), false); /* kinda a kludge */
+                showLocation( session, desc );
+            } else {
+                /* Nope, find the item, first in the inventory... */
+                boolean items = false;
+                Vector found = matching( player.getInventory(), command );
+                if ( found!=null ) {
+                    desc.append( ((Item)found.elementAt(0)).getDescription() ).append( '\n' );
+                    items = true;
+                }
+                // Now check for items that are in the room.  (Kinda a hack...)
+                found = matching( player.getInventory(player.getLocation()), command );
+                if ( found!=null ) {
+                    desc.append( ((Item)found.elementAt(0)).getDescription() ).append( '\n' );
+                    items = true;
+                }
+
+                if ( !items ) desc.append( "I don't see that around here.\n" );
+            } // end of (!command.hasNoun())
+        }
+    }
+
+    // Return the items whose keyword is the noun (or the last word of it),
+    // or null.  This is the inventory's own vector, so don't change it.
+    static Vector matching( Inventory items, CommandTokenizer command ) {
+        if ( !command.hasNoun() ) return null;
+        CharSequence text = command.getNounSource();
+        Vector found = items.findItems( text, command.getNounStart(), command.getNounEnd() );
+        if ( found==null ) found = items.findItems( text, command.getHeadStart(), command.getHeadEnd() );
+        return found;
+    }
+
+    // Describe where the session's player currently is, to out in one piece.
+    public void showLocation( GameSession session, OutputSink out ) {
+        showLocation( session, out.getBuffer() );
+        out.flush();
+    }
+    // Describe where the session's player currently is.
+    public void showLocation( GameSession session, StringBuffer desc ) {
+        boolean flag = false;
+        CreateWorld player = session.getPlayer();
+        Location location = player.getLocation();
+
+        desc.append( "\nLOCATION: " ).append( location.getName() ).append( '\n' );
+        if ( player.beenHere(location)==false || session.isVerbose()==true ) {
+            desc.append( location.getDescription() ).append( '\n' );
+            player.beenHere(location, true);
+        }
+
+        flag = false; /* No exits found yet. */
+        List exits = location.getExits();
+        for ( int i=0; i<exits.size(); i++ )
+        {
+            Exit an_exit = (Exit)exits.get( i );
+            boolean more = i<exits.size()-1;
+            if ( flag==true ) { /* If we have printed at least one dir... */
+                if ( !more ) { /* ...but there are no more after this one, */
+                    desc.append( " and " ); /* ...we can print the final "and". */
+                } else { /* Else there are more after this one... */
+                    desc.append( ", " ); /* ...so just print a comma. */
+                }
+            }
+            if ( flag==false) desc.append( "Obvious exits lead " );
+            desc.append( an_exit.getDirectionName() );
+            flag = true;
+            if ( !more ) desc.append( ".\n" );
+        }
+        if ( flag==false ) desc.append( "There are no obvious exits.\n" );
+
+        flag = false; /* no items */
+        desc.append( "You see " );
+        List items = player.getItems( location );
+        for ( int i=0; i<items.size(); i++ )
+        {
+            Item an_item = (Item)items.get( i );
+            boolean more = i<items.size()-1;
+            if ( flag==true && !more ) desc.append( "and " );
+            desc.append( an_item.getName() );
+            flag = true;
+            if ( more ) { /* More items? */
+                desc.append( ", " );
+            } else {
+                desc.append( ".\n" );
+            }
+        }
+        if ( !flag ) {
+            desc.append( "nothing of interest.\n" );
+        }
+        // HACK: The sound itself is up to whoever is displaying this.
+        if ( location.getSound()!=null ) {
+            desc.append( "[Background sound: " ).append( location.getSound() ).append( "]\n" );
+        }
+    }
+
+    // Play the game from the console, no applet required.  Run it from the
+    // directory holding hm_map.csv and hm_items.csv.  With -sound the
+    // background sounds are streamed too; with -journal dir the game is
+    // kept in a SessionJournal there and picked up again next time.
+    public static void main( String[] argv ) throws IOException {
+        GameEngine engine = new GameEngine();
+        URL docBase = new File(".").toURI().toURL();
+        GameSession session = new GameSession( docBase );
+        SoundPlayer sound = null;
+        SessionJournal journal = null;
+        SessionJournal.Player player = null;
+        if ( !session.getPlayer().getWorld().isLoaded() ) {
+            Log.error( "Unable to load the world, giving up." );
+            System.exit( 1 );
+        }
+        for ( int i=0; i<argv.length; i++ ) {
+            if ( argv[i].equals("-sound") ) {
+                sound = new SoundPlayer( docBase );
+            } else if ( argv[i].equals("-journal") && i+1<argv.length ) {
+                journal = new SessionJournal( new File(argv[++i]), session.getPlayer().getWorld(), engine, true );
+                Vector players = journal.getPlayers();
+                player = players.isEmpty() ? journal.open() : (SessionJournal.Player)players.elementAt( 0 );
+                session = player.getSession();
+            }
+        }
+        BufferedReader in = new BufferedReader( new InputStreamReader(System.in) );
+        StreamSink out = new StreamSink( System.out );
+
+        out.print( "Welcome, foolish mortal.\n" );
+        engine.showLocation( session, out.getBuffer() );
+        while (true) {
+            if ( sound!=null ) {
+                sound.loop( session.getLocation().getZone(), session.getLocation().getSound() );
+                sound.prefetch( session.getLocation() );
+            }
+            // The response and the next prompt go out together.
+            out.print( "What do you want to do now? " ).flush();
+            String line = in.readLine();
+            if ( line==null ) break;
+            if ( journal!=null ) {
+                journal.play( player, line, out.getBuffer() );
+            } else {
+                engine.textEntered( session, line, out.getBuffer() );
+            }
+        }
+        if ( sound!=null ) sound.shutdown();
+        if ( journal!=null ) journal.close();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+    Flight recorder (JFR) events for the game, so a recording shows what
+    players were doing alongside the GC and thread activity:
+
+        hauntedmansion.Command     every command: verb, room, time, bytes
+        hauntedmansion.WorldLoad   a world being loaded
+
+    Commands slower than GameMetrics' threshold are marked slow, so the
+    recording can be filtered down to them.  When no recording is running
+    an event costs a check of a flag and nothing is allocated.  Only used
+    through GameMetrics, and only if the JVM has JFR.
+*/
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+class GameEvents {
+    @Name( "hauntedmansion.Command" )
+    @Label( "Command" )
+    @Category( "Haunted Mansion" )
+    @Description( "One command typed by a player" )
+    static class CommandEvent extends Event {
+        @Label( "Verb" )
+        String verb;
+        @Label( "Room" )
+        String room;
+        @Label( "Time" )
+        @Timespan( Timespan.NANOSECONDS )
+        long time;
+        @Label( "Bytes Allocated" )
+        long bytes;
+        @Label( "Slow" )
+        boolean slow;
+    }
+
+    @Name( "hauntedmansion.WorldLoad" )
+    @Label( "World Load" )
+    @Category( "Haunted Mansion" )
+    static class WorldLoadEvent extends Event {
+        @Label( "From" )
+        String from;
+        @Label( "Rooms" )
+        int rooms;
+        @Label( "Time" )
+        @Timespan( Timespan.NANOSECONDS )
+        long time;
+    }
+
+    // Looked up once, so a command with no recording running doesn't even
+    // make an event object.
+    private static final EventType	COMMAND = EventType.getEventType( CommandEvent.class );
+    private static final EventType	WORLD_LOAD = EventType.getEventType( WorldLoadEvent.class );
+
+    static void command( String verb, Location room, long time, long bytes, boolean slow ) {
+        if ( !COMMAND.isEnabled() ) return;
+        CommandEvent event = new CommandEvent();
+        event.verb = verb;
+        event.room = room==null ? null : room.getName();
+        event.time = time;
+        event.bytes = bytes;
+        event.slow = slow;
+        event.commit();
+    }
+
+    static void worldLoaded( String from, int rooms, long time ) {
+        if ( !WORLD_LOAD.isEnabled() ) return;
+        WorldLoadEvent event = new WorldLoadEvent();
+        event.from = from;
+        event.rooms = rooms;
+        event.time = time;
+        event.commit();
+    }
+}
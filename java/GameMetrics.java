@@ -0,0 +1,299 @@
+/*
+    Counters for a running game server, cheap enough to leave on.  For
+    every verb: how many commands, how long they took (total and worst)
+    and, if the JVM can say, how many bytes they allocated.  Commands
+    slower than a threshold are also counted against the room they were
+    typed in, so slow rooms stand out.  On top of that it keeps how long
+    the world took to load and watches the sound cache and loader.
+
+    There is one GameMetrics per JVM (get()), registered as an MBean
+    named HauntedMansion:type=GameMetrics when the JVM allows it, and
+    every command, slow command and world load is also sent as a JFR
+    event (see GameEvents) when a flight recording is running.
+
+    Recording a command is two clock reads, a couple of uncontended adds
+    and, with allocation tracking on, two reads of the thread's
+    allocation counter.  No locks, no allocation.
+*/
+
+import java.lang.management.ManagementFactory;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+public class GameMetrics implements GameMetricsMBean {
+    public static final String OBJECT_NAME = "HauntedMansion:type=GameMetrics";
+    public static final String UNKNOWN = "(unknown)";	// Counts commands no verb took.
+    static final long SLOW_MILLIS = 10;
+
+    private static GameMetrics	metrics;
+    private static final boolean	JFR = classExists( "jdk.jfr.Event" );
+
+    // The counters of one verb (shared by all its aliases).
+    public static class VerbStats {
+        private String		name;
+        private LongAdder	count = new LongAdder();
+        private LongAdder	nanos = new LongAdder();
+        private LongAdder	bytes = new LongAdder();
+        private AtomicLong	max = new AtomicLong();
+
+        VerbStats( String name ) {
+            this.name = name;
+        }
+        public String getName() {
+            return name;
+        }
+        public long getCount() {
+            return count.sum();
+        }
+        public double getMeanMicros() {
+            long n = count.sum();
+            return n==0 ? 0 : nanos.sum()/1000.0/n;
+        }
+        public double getMaxMicros() {
+            return max.get()/1000.0;
+        }
+        // Return the mean bytes allocated per command (0 if not tracked).
+        public double getMeanBytes() {
+            long n = count.sum();
+            return n==0 ? 0 : (double)bytes.sum()/n;
+        }
+
+        void record( long elapsed, long allocated ) {
+            count.increment();
+            nanos.add( elapsed );
+            if ( allocated>0 ) bytes.add( allocated );
+            long worst = max.get();
+            while ( elapsed>worst && !max.compareAndSet(worst, elapsed) ) worst = max.get();
+        }
+        void reset() {
+            count.reset();
+            nanos.reset();
+            bytes.reset();
+            max.set( 0 );
+        }
+        public String toString() {
+            return name+": "+getCount()+" commands, mean "+round(getMeanMicros())+"us, max "
+                +round(getMaxMicros())+"us, "+round(getMeanBytes())+" bytes/command";
+        }
+    }
+
+    private Hashtable		verbs = new Hashtable();	// Name -> VerbStats.
+    private Vector		verbOrder = new Vector();	// The same, in order of creation.
+    private VerbStats		unknown = verb( UNKNOWN );
+    private ConcurrentHashMap	slowRooms = new ConcurrentHashMap();	// Room name -> AtomicLong.
+    private AtomicLong		slowCommands = new AtomicLong();
+    private volatile long	slowNanos = SLOW_MILLIS*1000000;
+    private volatile boolean	enabled = true;
+    private volatile boolean	allocationTracking;
+    private com.sun.management.ThreadMXBean	threads;	// Null if not HotSpot.
+    private AtomicLong		worldLoads = new AtomicLong();
+    private volatile long	lastWorldLoadNanos;
+    private volatile String	lastWorldLoad;
+    private volatile SoundList	soundList;
+    private volatile SoundLoader	soundLoader;
+
+    GameMetrics() {
+        try {
+            Object bean = ManagementFactory.getThreadMXBean();
+            if ( bean instanceof com.sun.management.ThreadMXBean
+                 && ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported() ) {
+                threads = (com.sun.management.ThreadMXBean)bean;
+                threads.setThreadAllocatedMemoryEnabled( true );
+                allocationTracking = true;
+            }
+        } catch (Throwable e) {		// Not allowed (applet), or not that JVM.
+            threads = null;
+        }
+    }
+
+    // Return the JVM's metrics, registering them with JMX the first time.
+    public static synchronized GameMetrics get() {
+        if ( metrics==null ) {
+            metrics = new GameMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean( metrics,
+                    new ObjectName(OBJECT_NAME) );
+            } catch (Throwable e) {		// No JMX for applets; count anyway.
+                Log.debug( "GameMetrics not registered with JMX: "+e );
+            }
+        }
+        return metrics;
+    }
+
+    private static boolean classExists( String name ) {
+        try {
+            Class.forName( name );
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    // Return the counters for a verb, making them the first time.
+    public synchronized VerbStats verb( String name ) {
+        VerbStats stats = (VerbStats)verbs.get( name );
+        if ( stats==null ) {
+            stats = new VerbStats( name );
+            verbs.put( name, stats );
+            verbOrder.add( stats );
+        }
+        return stats;
+    }
+    // The counters for commands with no verb we know.
+    public VerbStats getUnknown() {
+        return unknown;
+    }
+
+    // What to pass to command(): the thread's allocation counter, or -1
+    // if we aren't tracking allocation.
+    public long allocatedBytes() {
+        return allocationTracking ? threads.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    // A command has been run: count it for its verb (and its room, if slow).
+    // allocatedBefore is what allocatedBytes() said before it ran.
+    public void command( VerbStats stats, Location room, long elapsed, long allocatedBefore ) {
+        long allocated = allocatedBefore<0 ? -1 : allocatedBytes()-allocatedBefore;
+        stats.record( elapsed, allocated );
+        boolean slow = elapsed>=slowNanos;
+        if ( slow ) {
+            slowCommands.incrementAndGet();
+            String name = room==null ? "(nowhere)" : room.getName();
+            AtomicLong count = (AtomicLong)slowRooms.get( name );
+            if ( count==null ) {
+                AtomicLong created = new AtomicLong();
+                count = (AtomicLong)slowRooms.putIfAbsent( name, created );
+                if ( count==null ) count = created;
+            }
+            count.incrementAndGet();
+        }
+        if ( JFR ) GameEvents.command( stats.getName(), room, elapsed, allocated, slow );
+    }
+
+    // A world has been loaded.
+    public void worldLoaded( String from, int rooms, long elapsed ) {
+        worldLoads.incrementAndGet();
+        lastWorldLoadNanos = elapsed;
+        lastWorldLoad = rooms+" rooms from "+from;
+        if ( JFR ) GameEvents.worldLoaded( from, rooms, elapsed );
+    }
+
+    // Watch this sound cache and loader (the last ones given win).
+    public void watch( SoundList list, SoundLoader loader ) {
+        soundList = list;
+        soundLoader = loader;
+    }
+
+    static String round( double value ) {
+        return String.valueOf( Math.round(value*10)/10.0 );
+    }
+
+    // GameMetricsMBean.
+
+    public long getCommands() {
+        long total = 0;
+        for ( int i=0; i<verbOrder.size(); i++ ) total += ((VerbStats)verbOrder.elementAt( i )).getCount();
+        return total;
+    }
+    public double getMeanCommandMicros() {
+        long count = 0;
+        double micros = 0;
+        for ( int i=0; i<verbOrder.size(); i++ ) {
+            VerbStats stats = (VerbStats)verbOrder.elementAt( i );
+            count += stats.getCount();
+            micros += stats.getMeanMicros()*stats.getCount();
+        }
+        return count==0 ? 0 : micros/count;
+    }
+    public String[] getVerbs() {
+        Vector lines = new Vector();
+        for ( int i=0; i<verbOrder.size(); i++ ) {
+            VerbStats stats = (VerbStats)verbOrder.elementAt( i );
+            if ( stats.getCount()>0 ) lines.add( stats.toString() );
+        }
+        return (String[])lines.toArray( new String[lines.size()] );
+    }
+    public long getSlowCommands() {
+        return slowCommands.get();
+    }
+    public String[] getSlowRooms() {
+        Vector lines = new Vector();
+        for ( Enumeration e = slowRooms.keys(); e.hasMoreElements(); ) {
+            String room = (String)e.nextElement();
+            lines.add( room+": "+slowRooms.get(room) );
+        }
+        return (String[])lines.toArray( new String[lines.size()] );
+    }
+    public long getSlowCommandMillis() {
+        return slowNanos/1000000;
+    }
+    public void setSlowCommandMillis( long millis ) {
+        slowNanos = millis*1000000;
+    }
+
+    public long getWorldLoads() {
+        return worldLoads.get();
+    }
+    public double getLastWorldLoadMillis() {
+        return lastWorldLoadNanos/1000000.0;
+    }
+    public String getLastWorldLoad() {
+        return lastWorldLoad;
+    }
+
+    public double getSoundCacheHitRate() {
+        SoundList list = soundList;
+        if ( list==null ) return 0;
+        long asked = list.getHits()+list.getMisses();
+        return asked==0 ? 0 : (double)list.getHits()/asked;
+    }
+    public long getSoundCacheBytes() {
+        SoundList list = soundList;
+        return list==null ? 0 : list.getBytes();
+    }
+    public long getSoundCacheEvictions() {
+        SoundList list = soundList;
+        return list==null ? 0 : list.getEvictions();
+    }
+    public int getSoundLoadsPending() {
+        SoundLoader loader = soundLoader;
+        return loader==null ? 0 : loader.getPending();
+    }
+    public int getSoundLoadsQueued() {
+        SoundLoader loader = soundLoader;
+        return loader==null ? 0 : loader.getQueued();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+    public void setEnabled( boolean enabled ) {
+        this.enabled = enabled;
+    }
+    public boolean isAllocationTracking() {
+        return allocationTracking;
+    }
+    public void setAllocationTracking( boolean tracking ) {
+        allocationTracking = tracking && threads!=null;
+    }
+    public String getLogLevel() {
+        return Log.getLevelName( Log.getLevel() );
+    }
+    public void setLogLevel( String level ) {
+        int at = Log.parseLevel( level );
+        if ( at<0 ) throw new IllegalArgumentException( "Log levels are debug, info, warning, error and off" );
+        Log.setLevel( at );
+    }
+
+    public void reset() {
+        for ( int i=0; i<verbOrder.size(); i++ ) ((VerbStats)verbOrder.elementAt( i )).reset();
+        slowRooms.clear();
+        slowCommands.set( 0 );
+        worldLoads.set( 0 );
+    }
+}
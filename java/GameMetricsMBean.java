@@ -0,0 +1,38 @@
+/*
+    What GameMetrics shows over JMX (jconsole, VisualVM...), under the
+    name HauntedMansion:type=GameMetrics.  Times are in microseconds or
+    milliseconds as the names say.
+*/
+public interface GameMetricsMBean {
+    // Commands.
+    public long getCommands();
+    public double getMeanCommandMicros();
+    public String[] getVerbs();			// One line of counters per verb.
+    public long getSlowCommands();
+    public String[] getSlowRooms();		// Rooms slow commands were typed in, and how often.
+    public long getSlowCommandMillis();
+    public void setSlowCommandMillis( long millis );
+
+    // World loading.
+    public long getWorldLoads();
+    public double getLastWorldLoadMillis();
+    public String getLastWorldLoad();
+
+    // Sound.
+    public double getSoundCacheHitRate();
+    public long getSoundCacheBytes();
+    public long getSoundCacheEvictions();
+    public int getSoundLoadsPending();
+    public int getSoundLoadsQueued();
+
+    // Switches.
+    public boolean isEnabled();
+    public void setEnabled( boolean enabled );
+    public boolean isAllocationTracking();
+    public void setAllocationTracking( boolean tracking );
+    public String getLogLevel();
+    public void setLogLevel( String level );
+
+    // Start counting again from zero.
+    public void reset();
+}
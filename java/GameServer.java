@@ -0,0 +1,593 @@
+/*
+    Plays the game over the network, telnet style: connect, and each line
+    you type is a command.  There is no thread per player.  A handful of
+    event loops (one per processor by default) each own a Selector and
+    look after their share of the connections, and every command is run
+    right there on the loop's thread, which is fine since a command takes
+    microseconds.  An idle player costs a socket, a GameSession and a
+    small input buffer.
+
+    Output is written straight to the socket when it will take it.  What
+    it won't take waits in the connection's queue, and while more than
+    HIGH_WATER bytes are waiting we stop reading that connection's
+    commands (so a client that types but never reads can't make us hold
+    on to an endless backlog) until the queue drains below LOW_WATER.
+
+    The other way to serve is a thread per session, each running a plain
+    blocking read, command, write loop: simpler to follow, and a command
+    may block (on the journal, say) without holding up anybody else.
+    With -mode virtual each session gets a virtual thread, so 100k players
+    cost 100k small heap-allocated stacks rather than 100k OS threads;
+    virtual threads need Java 21, and on an older JVM this falls back to
+    a platform thread per session (with a warning).  -mode platform runs
+    the sessions on a fixed pool of -pool platform threads, and anyone
+    past that many waits for a player to leave.  ServerBenchmark compares
+    the three.
+
+        java GameServer [-port 2323] [-mode loop|virtual|platform]
+                        [-loops n] [-pool 200]
+
+    Run it from the directory holding hm_map.csv and hm_items.csv, then
+    telnet localhost 2323.  QUIT hangs up.
+*/
+
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GameServer {
+    public static final int PORT = 2323;
+    static final String WELCOME = "Welcome, foolish mortal.\n";
+    static final String PROMPT = "What do you want to do now? ";
+    static final String GOODBYE = "Goodbye.  Come back soon... and bring your death certificate.\n";
+    static final String TOO_LONG = new String( "That's too long for me.\n" );	// Compared by ==.
+    static final String BROKEN = "Something has gone badly wrong with your game.  Goodbye.\n";
+    static final int MAX_LINE = 1024;		// Longest command we'll take.
+    static final int HIGH_WATER = 32*1024;	// Stop reading a client with this much output waiting,
+    static final int LOW_WATER = 8*1024;	// and start again below this.
+    static final int POOL = 200;		// Platform threads for -mode platform.
+
+    private GameEngine		engine;
+    private WorldTemplate	world;
+    private ServerSocketChannel	server;
+    private EventLoop[]		loops;		// Event loop mode,
+    private ExecutorService	sessions;	// or a thread per session
+    private Thread		acceptor;	// (with one thread to accept them).
+    private Hashtable		open = new Hashtable();	// Its Connections, for shutdown.
+    private int			nextLoop = 0;
+    private AtomicInteger	connections = new AtomicInteger();
+    private volatile boolean	running = true;
+
+    // Listen on port (0 for any free one) and serve with the given number of event loops.
+    public GameServer( GameEngine engine, WorldTemplate world, int port, int numLoops ) throws IOException {
+        this( engine, world, port );
+        server.configureBlocking( false );
+        loops = new EventLoop[ Math.max(1, numLoops) ];
+        for ( int i=0; i<loops.length; i++ ) loops[i] = new EventLoop( i );
+        server.register( loops[0].selector, SelectionKey.OP_ACCEPT );
+        for ( int i=0; i<loops.length; i++ ) loops[i].start();
+    }
+
+    // Listen on port and run each session on its own task in sessions
+    // (see virtualThreads() and platformThreads()).
+    public GameServer( GameEngine engine, WorldTemplate world, int port, ExecutorService sessions ) throws IOException {
+        this( engine, world, port );
+        this.sessions = sessions;
+        acceptor = new Thread( "GameServer acceptor" ) {
+            public void run() {
+                accept();
+            }
+        };
+        acceptor.start();
+    }
+
+    private GameServer( GameEngine engine, WorldTemplate world, int port ) throws IOException {
+        this.engine = engine;
+        this.world = world;
+        server = ServerSocketChannel.open();
+        server.socket().setReuseAddress( true );
+        server.socket().bind( new InetSocketAddress(port), 1024 );
+    }
+
+    // Return an executor that runs each task on a new virtual thread, or
+    // null if this JVM doesn't have them (they came in Java 21).
+    public static ExecutorService virtualThreads() {
+        try {
+            Method factory = Executors.class.getMethod( "newVirtualThreadPerTaskExecutor", new Class[0] );
+            return (ExecutorService)factory.invoke( null, new Object[0] );
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    // Return an executor that runs tasks on a pool of n platform threads.
+    public static ExecutorService platformThreads( int n ) {
+        return Executors.newFixedThreadPool( n );
+    }
+
+    // Return the port we are listening on.
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+    // Return how many players are connected.
+    public int getConnections() {
+        return connections.get();
+    }
+
+    // Hang up on everybody and stop.
+    public void shutdown() throws IOException {
+        running = false;
+        if ( sessions!=null ) {
+            server.close();		// Stops accept().
+            for ( Enumeration e = open.keys(); e.hasMoreElements(); ) {
+                try {
+                    ((Connection)e.nextElement()).channel.close();
+                } catch (IOException ex) {}
+            }
+            sessions.shutdownNow();
+            try {
+                acceptor.join();
+                sessions.awaitTermination( 10, TimeUnit.SECONDS );
+            } catch (InterruptedException e) {}
+            return;
+        }
+        for ( int i=0; i<loops.length; i++ ) loops[i].selector.wakeup();
+        for ( int i=0; i<loops.length; i++ ) {
+            try {
+                loops[i].join();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        server.close();
+    }
+
+    // One player's connection.
+    static class Connection {
+        SocketChannel	channel;
+        SelectionKey	key;
+        GameSession	session;
+        byte[]		in = new byte[ 128 ];	// Input not yet made into lines,
+        int		start = 0;		// from here
+        int		length = 0;		// to here.
+        int		telnet = 0;		// Telnet command state (see take()).
+        boolean		discarding = false;	// Skipping an overlong line.
+        Vector		queue;			// ByteBuffers waiting to be written.
+        int		queued = 0;		// Bytes in them.
+        boolean		closing = false;	// Hang up once the queue is written.
+
+        Connection( SocketChannel channel, GameSession session ) {
+            this.channel = channel;
+            this.session = session;
+        }
+
+        // Return how many more bytes of input there's room for.  Never 0:
+        // a line that fills the buffer is thrown away.
+        int room() {
+            if ( length==MAX_LINE ) {		// No newline in sight.
+                length = 0;
+                discarding = true;
+            }
+            return MAX_LINE-length;
+        }
+
+        // Add a byte of input, leaving out telnet commands (IAC, and the
+        // option or subnegotiation after it).
+        void take( byte b ) {
+            int c = b&0xFF;
+            switch ( telnet ) {
+                case 1:		// After IAC.
+                    if ( c==255 ) break;		// IAC IAC is a real 255.
+                    telnet = c==250 ? 3 : c>=251 ? 2 : 0;
+                    return;
+                case 2:		// The option of WILL/WONT/DO/DONT.
+                    telnet = 0;
+                    return;
+                case 3:		// Subnegotiation, up to IAC SE.
+                    if ( c==255 ) telnet = 4;
+                    return;
+                case 4:
+                    telnet = c==240 ? 0 : 3;
+                    return;
+                default:
+                    if ( c==255 ) {
+                        telnet = 1;
+                        return;
+                    }
+            }
+            telnet = 0;
+            if ( length==in.length ) {	// room() keeps this under MAX_LINE.
+                byte[] bigger = new byte[ Math.min(in.length*2, MAX_LINE) ];
+                System.arraycopy( in, 0, bigger, 0, length );
+                in = bigger;
+            }
+            in[ length++ ] = b;
+        }
+
+        // Return the next whole line of input (TOO_LONG for one that was
+        // thrown away), or null if there isn't one yet.
+        String nextLine() {
+            for ( int i=start; i<length; i++ ) {
+                if ( in[i]!='\n' ) continue;
+                int begin = start, end = i;
+                start = i+1;
+                if ( end>begin && in[end-1]=='\r' ) end--;
+                if ( discarding ) {
+                    discarding = false;
+                    return TOO_LONG;
+                }
+                return new String( in, begin, end-begin, StandardCharsets.ISO_8859_1 );
+            }
+            System.arraycopy( in, start, in, 0, length-start );
+            length -= start;
+            start = 0;
+            return null;
+        }
+    }
+
+    // Greet a new player.
+    void welcome( GameSession session, OutputSink sink ) {
+        sink.print( WELCOME );
+        engine.showLocation( session, sink.getBuffer() );
+        sink.print( PROMPT ).flush();
+    }
+
+    // Run one line from a player and return false if it was QUIT, or if
+    // the command blew up: the game may be half changed, so the player is
+    // told and hung up on, and nobody else is affected.
+    boolean play( GameSession session, String line, OutputSink sink ) {
+        if ( line==TOO_LONG ) {
+            sink.print( TOO_LONG ).print( PROMPT ).flush();
+            return true;
+        }
+        if ( line.trim().equalsIgnoreCase("QUIT") ) {
+            sink.print( GOODBYE ).flush();
+            return false;
+        }
+        try {
+            engine.textEntered( session, line, sink.getBuffer() );
+        } catch (RuntimeException e) {
+            Log.error( "Command '"+line+"' failed: "+e );
+            sink.print( BROKEN ).flush();
+            return false;
+        }
+        sink.print( PROMPT ).flush();
+        return true;
+    }
+
+    // Turns \n into \r\n on the way to a telnet client.
+    static class TelnetWriter extends FilterWriter {
+        TelnetWriter( Writer out ) {
+            super( out );
+        }
+        public void write( int c ) throws IOException {
+            if ( c=='\n' ) out.write( '\r' );
+            out.write( c );
+        }
+        public void write( char[] text, int off, int len ) throws IOException {
+            int from = off;
+            for ( int i=off; i<off+len; i++ ) {
+                if ( text[i]!='\n' ) continue;
+                out.write( text, from, i-from );
+                out.write( '\r' );
+                from = i;
+            }
+            out.write( text, from, off+len-from );
+        }
+        public void write( String text, int off, int len ) throws IOException {
+            for ( int i=off; i<off+len; i++ ) write( text.charAt(i) );
+        }
+    }
+
+    // Take connections and start a session for each (thread per session mode).
+    void accept() {
+        try {
+            for (;;) {
+                final SocketChannel channel = server.accept();
+                channel.socket().setTcpNoDelay( true );
+                try {
+                    sessions.execute( new Runnable() {
+                        public void run() {
+                            session( channel );
+                        }
+                    } );
+                } catch (RejectedExecutionException e) {
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            if ( running ) Log.error( "GameServer stopped accepting: "+e );
+        }
+    }
+
+    // Play one connection's game from start to end, blocking as needed.
+    void session( SocketChannel channel ) {
+        Connection conn = new Connection( channel, new GameSession(new CreateWorld(world)) );
+        open.put( conn, conn );
+        connections.incrementAndGet();
+        try {
+            InputStream in = channel.socket().getInputStream();
+            StreamSink sink = new StreamSink( new TelnetWriter(new BufferedWriter(
+                new OutputStreamWriter(channel.socket().getOutputStream(), "ISO-8859-1"), 4096)) );
+            welcome( conn.session, sink );
+            byte[] bytes = new byte[ MAX_LINE ];
+            for (;;) {
+                String line;
+                while ( (line = conn.nextLine())!=null ) {
+                    if ( !play(conn.session, line, sink) ) return;
+                    if ( sink.getError()!=null ) return;	// Nobody to play the rest for.
+                }
+                int n = in.read( bytes, 0, conn.room() );
+                if ( n<0 ) return;
+                for ( int i=0; i<n; i++ ) conn.take( bytes[i] );
+            }
+        } catch (IOException e) {
+            // Gone.
+        } finally {
+            open.remove( conn );
+            connections.decrementAndGet();
+            try {
+                channel.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    // Sends a response to whichever connection the loop is working on.
+    class LoopSink extends OutputSink {
+        EventLoop	loop;
+        Connection	to;
+
+        LoopSink( EventLoop loop ) {
+            this.loop = loop;
+        }
+        protected void write( StringBuffer text ) {
+            loop.send( to, text );
+        }
+    }
+
+    class EventLoop extends Thread {
+        Selector	selector;
+        ConcurrentLinkedQueue	arrivals = new ConcurrentLinkedQueue();	// New SocketChannels.
+        ByteBuffer	readBuffer = ByteBuffer.allocateDirect( MAX_LINE );
+        ByteBuffer	writeBuffer = ByteBuffer.allocateDirect( 64*1024 );
+        char[]		chars = new char[ 4096 ];	// Each response, copied out to encode.
+        LoopSink	sink = new LoopSink( this );
+
+        EventLoop( int number ) throws IOException {
+            super( "GameServer loop "+number );
+            selector = Selector.open();
+        }
+
+        public void run() {
+            try {
+                while ( running ) {
+                    selector.select();
+                    SocketChannel arrived;
+                    while ( (arrived = (SocketChannel)arrivals.poll())!=null ) welcome( arrived );
+                    Iterator keys = selector.selectedKeys().iterator();
+                    while ( keys.hasNext() ) {
+                        SelectionKey key = (SelectionKey)keys.next();
+                        keys.remove();
+                        if ( !key.isValid() ) continue;
+                        if ( key.isAcceptable() ) {
+                            accept();
+                            continue;
+                        }
+                        Connection conn = (Connection)key.attachment();
+                        try {
+                            if ( key.isWritable() ) drain( conn );
+                            if ( key.isValid() && key.isReadable() ) read( conn );
+                        } catch (RuntimeException e) {
+                            // Only this connection goes, not the loop and everyone on it.
+                            Log.error( getName()+" dropped a connection: "+e );
+                            close( conn );
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Log.error( getName()+" stopped: "+e );
+            } finally {
+                for ( Iterator keys = selector.keys().iterator(); keys.hasNext(); ) {
+                    Object conn = ((SelectionKey)keys.next()).attachment();
+                    if ( conn!=null ) close( (Connection)conn );
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {}
+            }
+        }
+
+        // Take new connections and deal them out to the loops in turn.
+        void accept() throws IOException {
+            SocketChannel channel;
+            while ( (channel = server.accept())!=null ) {
+                channel.configureBlocking( false );
+                channel.socket().setTcpNoDelay( true );
+                EventLoop loop = loops[ nextLoop++%loops.length ];
+                if ( loop==this ) {
+                    welcome( channel );
+                } else {
+                    loop.arrivals.add( channel );
+                    loop.selector.wakeup();
+                }
+            }
+        }
+
+        // Start a game for a new connection.
+        void welcome( SocketChannel channel ) {
+            Connection conn = new Connection( channel, new GameSession(new CreateWorld(world)) );
+            try {
+                conn.key = channel.register( selector, SelectionKey.OP_READ, conn );
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            connections.incrementAndGet();
+            sink.to = conn;
+            try {
+                GameServer.this.welcome( conn.session, sink );
+            } catch (RuntimeException e) {
+                Log.error( getName()+" dropped a new connection: "+e );
+                close( conn );
+            }
+        }
+
+        void read( Connection conn ) {
+            if ( conn.closing || conn.queued>=HIGH_WATER ) return;
+            readBuffer.clear();
+            readBuffer.limit( conn.room() );
+            int n;
+            try {
+                n = conn.channel.read( readBuffer );
+            } catch (IOException e) {
+                n = -1;
+            }
+            if ( n<0 ) {
+                close( conn );
+                return;
+            }
+            readBuffer.flip();
+            while ( readBuffer.hasRemaining() ) conn.take( readBuffer.get() );
+            commands( conn );
+        }
+
+        // Run every whole line of input, unless the client is too far behind
+        // or send() found it gone and closed the connection.
+        void commands( Connection conn ) {
+            sink.to = conn;
+            String line;
+            while ( conn.key.isValid() && !conn.closing && conn.queued<HIGH_WATER
+                    && (line = conn.nextLine())!=null ) {
+                if ( !play(conn.session, line, sink) ) {
+                    conn.closing = true;
+                    if ( conn.queued==0 ) close( conn );
+                }
+            }
+            if ( conn.key.isValid() ) {
+                boolean reading = !conn.closing && conn.queued<HIGH_WATER;
+                int ops = (reading ? SelectionKey.OP_READ : 0) | (conn.queued>0 ? SelectionKey.OP_WRITE : 0);
+                if ( ops!=conn.key.interestOps() ) conn.key.interestOps( ops );	// A system call.
+            }
+        }
+
+        // Write a response (with telnet line ends), queueing what won't go now.
+        void send( Connection conn, StringBuffer text ) {
+            int n = text.length();
+            if ( chars.length<n ) chars = new char[ Math.max(n, chars.length*2) ];
+            text.getChars( 0, n, chars, 0 );	// Not charAt(): that locks the StringBuffer every time.
+            for ( int i=0; i<n; ) {
+                writeBuffer.clear();
+                while ( i<n && writeBuffer.remaining()>=2 ) {
+                    char c = chars[ i++ ];
+                    if ( c=='\n' ) writeBuffer.put( (byte)'\r' );
+                    writeBuffer.put( (byte)(c<256 ? c : '?') );
+                }
+                writeBuffer.flip();
+                if ( conn.queued==0 ) {
+                    try {
+                        conn.channel.write( writeBuffer );
+                    } catch (IOException e) {
+                        close( conn );
+                        return;
+                    }
+                }
+                if ( writeBuffer.hasRemaining() ) {
+                    ByteBuffer rest = ByteBuffer.allocate( writeBuffer.remaining() );
+                    rest.put( writeBuffer ).flip();
+                    if ( conn.queue==null ) conn.queue = new Vector();
+                    conn.queue.add( rest );
+                    conn.queued += rest.remaining();
+                }
+            }
+            if ( conn.queued>0 && conn.key.isValid() ) {
+                conn.key.interestOps( conn.key.interestOps()|SelectionKey.OP_WRITE );
+            }
+        }
+
+        // The client can take more: write what's queued.
+        void drain( Connection conn ) {
+            try {
+                while ( conn.queued>0 ) {
+                    ByteBuffer next = (ByteBuffer)conn.queue.elementAt( 0 );
+                    int n = conn.channel.write( next );
+                    conn.queued -= n;
+                    if ( next.hasRemaining() ) break;
+                    conn.queue.removeElementAt( 0 );
+                }
+            } catch (IOException e) {
+                close( conn );
+                return;
+            }
+            if ( conn.queued==0 ) {
+                conn.queue = null;
+                if ( conn.closing ) {
+                    close( conn );
+                    return;
+                }
+            }
+            if ( conn.queued<LOW_WATER ) {
+                commands( conn );	// Anything that came in while we weren't reading.
+            } else {
+                conn.key.interestOps( SelectionKey.OP_WRITE );
+            }
+        }
+
+        void close( Connection conn ) {
+            if ( conn.key!=null && conn.key.isValid() ) {
+                conn.key.cancel();
+                connections.decrementAndGet();
+            }
+            try {
+                conn.channel.close();
+            } catch (IOException e) {}
+        }
+    }
+
+    // Start a server in the given mode: "loop" (with numLoops event
+    // loops), "virtual", or "platform" (with a pool of numThreads).
+    public static GameServer start( GameEngine engine, WorldTemplate world, int port, String mode,
+                                    int numLoops, int numThreads ) throws IOException {
+        if ( mode.equals("loop") ) return new GameServer( engine, world, port, numLoops );
+        ExecutorService sessions = null;
+        if ( mode.equals("virtual") ) {
+            sessions = virtualThreads();
+            if ( sessions==null ) {
+                Log.warning( "Virtual threads need Java 21; using a platform thread per session instead." );
+                sessions = Executors.newCachedThreadPool();
+            }
+        } else if ( mode.equals("platform") ) {
+            sessions = platformThreads( numThreads );
+        } else {
+            throw new IllegalArgumentException( "Unknown mode "+mode+" (loop, virtual or platform)" );
+        }
+        return new GameServer( engine, world, port, sessions );
+    }
+
+    public static void main( String[] argv ) throws IOException {
+        int port = PORT;
+        String mode = "loop";
+        int numLoops = Runtime.getRuntime().availableProcessors();
+        int numThreads = POOL;
+        for ( int i=0; i+1<argv.length; i+=2 ) {
+            if ( argv[i].equals("-port") ) port = Integer.parseInt( argv[i+1] );
+            else if ( argv[i].equals("-mode") ) mode = argv[i+1];
+            else if ( argv[i].equals("-loops") ) numLoops = Integer.parseInt( argv[i+1] );
+            else if ( argv[i].equals("-pool") ) numThreads = Integer.parseInt( argv[i+1] );
+        }
+        WorldTemplate world = WorldTemplate.get( new File(".").toURI().toURL() );
+        if ( !world.isLoaded() ) {
+            Log.error( "Unable to load the world, giving up." );
+            System.exit( 1 );
+        }
+        GameServer server = start( new GameEngine(), world, port, mode, numLoops, numThreads );
+        Log.info( "Listening on port "+server.getPort()+" ("+(mode.equals("loop") ? numLoops+" event loops"
+                  : mode.equals("platform") ? numThreads+" session threads" : "a thread per session")+")." );
+    }
+}
@@ -0,0 +1,60 @@
+/*
+    One player's game.  Everything that changes while somebody plays (where
+    they are, what they carry, what they have seen, VERBOSE mode) hangs off
+    of this object, so a single GameEngine can run as many of these side by
+    side as we like.  The Adventure applet just owns one of them.
+*/
+
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+public class GameSession {
+    private CreateWorld	player;			// World and player state.
+    private boolean	verbose = false;	// VERBOSE ON/OFF.
+    private CommandTokenizer	tokenizer = new CommandTokenizer();	// Reused for every command.
+    private Hashtable	saved;			// SAVE name -> saved game (see SaveGame).
+
+    // Start a new game in the world loaded from docBase.
+    GameSession( URL docBase ) {
+        this( new CreateWorld(docBase) );
+    }
+    // Start a new game using an already created world.
+    GameSession( CreateWorld player ) {
+        this.player = player;
+    }
+
+    // Return the player (and the world they are in).
+    public CreateWorld getPlayer() {
+        return player;
+    }
+    // Shortcut for where the player currently is.
+    public Location getLocation() {
+        return player.getLocation();
+    }
+    // Return the tokenizer used to split up this session's commands.
+    public CommandTokenizer getTokenizer() {
+        return tokenizer;
+    }
+    // Set/change verbose mode.
+    public void setVerbose( boolean verbose ) {
+        this.verbose = verbose;
+    }
+    // Return verbose mode.
+    public boolean isVerbose() {
+        return verbose;
+    }
+    // Keep a saved game under a name ("" if it wasn't given one).
+    public void putSaved( String name, byte[] game ) {
+        if ( saved==null ) saved = new Hashtable();
+        saved.put( name, game );
+    }
+    // Return the game saved under a name, or null.
+    public byte[] getSaved( String name ) {
+        return saved==null ? null : (byte[])saved.get( name );
+    }
+    // Return the names games have been saved under.
+    public Enumeration getSavedNames() {
+        return saved==null ? new Hashtable().keys() : saved.keys();
+    }
+}
@@ -1,28 +1,121 @@
-/* Inventory item.  Contains a vector of item items... */
+/* Inventory item.  Contains a vector of item items...
 
+   Also used to hold the items lying in a Location.  Alongside the vector
+   (which keeps the order things were added in) there is an index from
+   keyword to the items using it, kept up to date by every add and remove,
+   so finding "book" is a hash lookup rather than a walk over everything
+   here.  Keywords are matched without regard to case.
+
+   getItems() hands out a read-only view of the vector rather than a copy,
+   so looking at what is here costs nothing.  The view follows any later
+   changes, so take a copy first if you need to change things while
+   going through it.
+*/
+
+import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
 
 public class Inventory {
     private Vector 	items;
+    private List	view;				// Read-only view of items.
+    private KeywordTable	index = new KeywordTable();	// Keyword -> Vector of items.
 
     // Create a new (empty) vector of items.
     Inventory()
     {
         items = new Vector();
+        view = Collections.unmodifiableList( items );
+    }
+    // Create a copy of another inventory.
+    Inventory( Inventory other )
+    {
+        items = new Vector( other.items.size()+4 );
+        view = Collections.unmodifiableList( items );
+        addItems( other.items );
     }
     // Add an item into inventory.
     public void addItem( Item item )
     {
         items.add( item );
+        Vector same = (Vector)index.get( item.getKeyword() );
+        if ( same==null ) {
+            same = new Vector( 2 );
+            index.put( item.getKeyword(), same );
+        }
+        same.add( item );
+    }
+    // Add a list of items, in order.
+    public void addItems( List more )
+    {
+        for ( int i=0; i<more.size(); i++ ) addItem( (Item)more.get(i) );
     }
     // Remove an item from inventory.
     public void removeItem( Item item )
     {
-        if ( items.contains(item) ) items.remove(item);
+        if ( items.remove(item) ) unindex( item );
     }
-    // Return a list of items in inventory.
-    public Vector getItems()
+    // Is there anything here that can be picked up?
+    public boolean hasGetableItems()
+    {
+        for ( int i=0; i<items.size(); i++ ) {
+            if ( ((Item)items.elementAt( i )).isGetable() ) return true;
+        }
+        return false;
+    }
+    // Remove and return every item that can be picked up (in one pass).
+    public Vector removeGetableItems()
+    {
+        Vector taken = new Vector();
+        int kept = 0;
+        for ( int i=0; i<items.size(); i++ ) {
+            Item item = (Item)items.elementAt( i );
+            if ( item.isGetable() ) {
+                taken.add( item );
+                unindex( item );
+            } else {
+                items.setElementAt( item, kept++ );	// Slide it down.
+            }
+        }
+        items.setSize( kept );
+        return taken;
+    }
+    // Remove and return everything.
+    public Vector removeAllItems()
+    {
+        Vector all = new Vector( items );
+        items.clear();
+        index = new KeywordTable();
+        return all;
+    }
+    // Return the items using a keyword (don't change the vector), or null.
+    public Vector findItems( String keyword )
+    {
+        return (Vector)index.get( keyword );
+    }
+    // Same, for a keyword found between start and end of some text.
+    public Vector findItems( CharSequence text, int start, int end )
+    {
+        return (Vector)index.get( text, start, end );
+    }
+    // Return the first item using a keyword, or null.
+    public Item findItem( CharSequence text, int start, int end )
+    {
+        Vector same = findItems( text, start, end );
+        return same==null ? null : (Item)same.elementAt( 0 );
+    }
+    // Return a (read-only) list of items in inventory.
+    public List getItems()
+    {
+        return view;
+    }
+
+    // Take an item out of the keyword index.
+    private void unindex( Item item )
     {
-        return (Vector)items.clone();
+        Vector same = (Vector)index.get( item.getKeyword() );
+        if ( same==null ) return;
+        same.remove( item );
+        if ( same.isEmpty() ) index.remove( item.getKeyword() );
     }
 }
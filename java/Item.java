@@ -8,6 +8,7 @@ public class Item {
     protected String 	name = null;
     protected String 	description = null;
     protected boolean	getable = true;
+    protected int	index = -1;	// Number in the world's item table (-1 if not from one).
 
     public boolean isSpecial() {
         return false;
@@ -65,6 +66,14 @@ public class Item {
     public String getKeyword() {
         return keyword;
     }
+    // Set/change the item's number in the world's item table.
+    void setIndex( int index ) {
+        this.index = index;
+    }
+    // Return the item's number in the world's item table.
+    public int getIndex() {
+        return index;
+    }
     // Set/change item getable status.
     public void setGetable( boolean getable ) {
         this.getable = getable;
@@ -0,0 +1,153 @@
+/*
+    Just enough JSON to read the data files the JavaScript version of the
+    game uses (hm_map.json, hm_audio.json).  Objects come back as a
+    Hashtable, arrays as a Vector, numbers as a Double, true/false as a
+    Boolean and null as JSONReader.NULL (Hashtable can't hold a real null).
+*/
+
+import java.io.*;
+import java.net.URL;
+import java.util.Hashtable;
+import java.util.Vector;
+
+public class JSONReader {
+    public static final Object NULL = new Object();	// Stands in for a JSON null.
+
+    private String	text;
+    private int		pos = 0;
+
+    private JSONReader( String text ) {
+        this.text = text;
+    }
+
+    // Parse a whole JSON document.
+    public static Object parse( String text ) throws IOException {
+        JSONReader reader = new JSONReader( text );
+        Object value = reader.value();
+        reader.skipBlanks();
+        if ( reader.pos<text.length() ) throw reader.error( "Extra text after JSON value" );
+        return value;
+    }
+    // Read and parse a JSON file.
+    public static Object parse( URL url ) throws IOException {
+        Reader in = new InputStreamReader( url.openStream(), "UTF-8" );
+        StringBuffer buf = new StringBuffer();
+        char[] chunk = new char[8192];
+        int n;
+        while ( (n = in.read(chunk))>0 ) buf.append( chunk, 0, n );
+        in.close();
+        return parse( buf.toString() );
+    }
+
+    private Object value() throws IOException {
+        skipBlanks();
+        if ( pos>=text.length() ) throw error( "Unexpected end of JSON" );
+        char ch = text.charAt( pos );
+        if ( ch=='{' ) return object();
+        if ( ch=='[' ) return array();
+        if ( ch=='"' ) return string();
+        if ( text.startsWith("true", pos) ) { pos += 4; return Boolean.TRUE; }
+        if ( text.startsWith("false", pos) ) { pos += 5; return Boolean.FALSE; }
+        if ( text.startsWith("null", pos) ) { pos += 4; return NULL; }
+        return number();
+    }
+
+    private Hashtable object() throws IOException {
+        Hashtable object = new Hashtable();
+        pos++;					// Skip {
+        skipBlanks();
+        if ( peek()=='}' ) { pos++; return object; }
+        while (true) {
+            skipBlanks();
+            if ( peek()!='"' ) throw error( "Expected a name" );
+            String name = string();
+            skipBlanks();
+            expect( ':' );
+            object.put( name, value() );
+            skipBlanks();
+            if ( peek()==',' ) { pos++; continue; }
+            expect( '}' );
+            return object;
+        }
+    }
+
+    private Vector array() throws IOException {
+        Vector array = new Vector();
+        pos++;					// Skip [
+        skipBlanks();
+        if ( peek()==']' ) { pos++; return array; }
+        while (true) {
+            array.add( value() );
+            skipBlanks();
+            if ( peek()==',' ) { pos++; continue; }
+            expect( ']' );
+            return array;
+        }
+    }
+
+    private String string() throws IOException {
+        StringBuffer buf = new StringBuffer();
+        pos++;					// Skip opening quote.
+        while ( pos<text.length() ) {
+            char ch = text.charAt( pos++ );
+            if ( ch=='"' ) return buf.toString();
+            if ( ch!='\\' ) {
+                buf.append( ch );
+                continue;
+            }
+            if ( pos>=text.length() ) break;
+            ch = text.charAt( pos++ );
+            switch ( ch ) {
+                case 'n': buf.append( '\n' ); break;
+                case 't': buf.append( '\t' ); break;
+                case 'r': buf.append( '\r' ); break;
+                case 'b': buf.append( '\b' ); break;
+                case 'f': buf.append( '\f' ); break;
+                case 'u':
+                    if ( pos+4>text.length() ) throw error( "Bad \\u escape" );
+                    buf.append( (char)Integer.parseInt(text.substring(pos, pos+4), 16) );
+                    pos += 4;
+                    break;
+                default: buf.append( ch );	// \" \\ \/
+            }
+        }
+        throw error( "Unterminated string" );
+    }
+
+    private Double number() throws IOException {
+        int start = pos;
+        while ( pos<text.length() && "+-0123456789.eE".indexOf(text.charAt(pos))>=0 ) pos++;
+        if ( start==pos ) throw error( "Unexpected character '"+text.charAt(pos)+"'" );
+        try {
+            return Double.valueOf( text.substring(start, pos) );
+        } catch (NumberFormatException e) {
+            throw error( "Bad number" );
+        }
+    }
+
+    private char peek() {
+        return pos<text.length() ? text.charAt(pos) : 0;
+    }
+    private void expect( char ch ) throws IOException {
+        if ( peek()!=ch ) throw error( "Expected '"+ch+"'" );
+        pos++;
+    }
+    private void skipBlanks() {
+        while ( pos<text.length() && Character.isWhitespace(text.charAt(pos)) ) pos++;
+    }
+    private IOException error( String message ) {
+        return new IOException( message+" at character "+pos );
+    }
+
+    // Helpers for picking values out of what parse() returns.
+    // Return a number member of an object as an int (or def if missing).
+    public static int getInt( Hashtable object, String name, int def ) {
+        Object value = object.get( name );
+        return (value instanceof Number) ? ((Number)value).intValue() : def;
+    }
+    // Return a string member of an object (or null if missing).
+    public static String getString( Hashtable object, String name ) {
+        Object value = object.get( name );
+        return (value instanceof String) ? (String)value : null;
+    }
+}
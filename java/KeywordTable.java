@@ -0,0 +1,122 @@
+/*
+    A small hash table from words to objects that ignores case, both when
+    hashing and when comparing.  Lookups can be done on part of any text
+    (such as the noun in a CommandTokenizer), so finding what a player
+    typed never needs an upper cased copy of it.  Open addressing with
+    linear probing; the table is kept at most half full.
+*/
+public class KeywordTable {
+    private String[]	keys;		// Upper cased words, null for empty slots.
+    private Object[]	values;		// What each word maps to.
+    private int		count = 0;	// Slots in use.
+
+    // Create an empty table.
+    public KeywordTable()
+    {
+        this( 8 );
+    }
+    // Create an empty table with room for about size words.
+    public KeywordTable( int size )
+    {
+        int slots = 4;
+        while ( slots<size*2 ) slots *= 2;
+        keys = new String[ slots ];
+        values = new Object[ slots ];
+    }
+
+    // Store value under word, replacing anything already there.
+    public void put( String word, Object value )
+    {
+        if ( (count+1)*2 > keys.length ) grow();
+        int i = slot( word, 0, word.length() );
+        if ( keys[i]==null ) {
+            keys[i] = upper( word );
+            count++;
+        }
+        values[i] = value;
+    }
+    // Return what word maps to, or null.
+    public Object get( String word )
+    {
+        return get( word, 0, word.length() );
+    }
+    // Return what the word between start and end of text maps to, or null.
+    public Object get( CharSequence text, int start, int end )
+    {
+        int i = slot( text, start, end );
+        return values[i];
+    }
+    // Forget a word.
+    public void remove( String word )
+    {
+        int mask = keys.length-1;
+        int i = slot( word, 0, word.length() );
+        if ( keys[i]==null ) return;
+        keys[i] = null;
+        values[i] = null;
+        count--;
+        // Move later entries of the same run back, so nothing is lost
+        // behind the hole we just made.
+        for ( int j = (i+1) & mask; keys[j]!=null; j = (j+1) & mask ) {
+            int home = hash( keys[j], 0, keys[j].length() ) & mask;
+            if ( ((j-home) & mask) >= ((j-i) & mask) ) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = null;
+                values[j] = null;
+                i = j;
+            }
+        }
+    }
+    // Return how many words are stored.
+    public int size()
+    {
+        return count;
+    }
+
+    // Find the slot holding a word, or the empty slot where it would go.
+    private int slot( CharSequence text, int start, int end )
+    {
+        int mask = keys.length-1;
+        int i = hash( text, start, end ) & mask;
+        while ( keys[i]!=null && !matches(keys[i], text, start, end) ) i = (i+1) & mask;
+        return i;
+    }
+    // Double the table size.
+    private void grow()
+    {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new String[ oldKeys.length*2 ];
+        values = new Object[ oldKeys.length*2 ];
+        count = 0;
+        for ( int i=0; i<oldKeys.length; i++ ) {
+            if ( oldKeys[i]!=null ) put( oldKeys[i], oldValues[i] );
+        }
+    }
+    // Upper case a word one char at a time, the same way hash() and
+    // matches() do (String.toUpperCase() follows the locale and can
+    // change the length, so its keys might never be found).
+    private static String upper( String word )
+    {
+        char[] chars = new char[ word.length() ];
+        for ( int i=0; i<chars.length; i++ ) chars[i] = Character.toUpperCase( word.charAt(i) );
+        return new String( chars );
+    }
+    // Case blind hash of part of some text.
+    private static int hash( CharSequence text, int start, int end )
+    {
+        int h = 0;
+        for ( int i=start; i<end; i++ ) h = 31*h + Character.toUpperCase( text.charAt(i) );
+        return h ^ (h>>>16);
+    }
+    // Does an (upper case) word match part of some text, ignoring case?
+    private static boolean matches( String word, CharSequence text, int start, int end )
+    {
+        if ( word.length()!=end-start ) return false;
+        for ( int i=0; i<word.length(); i++ ) {
+            if ( word.charAt(i)!=Character.toUpperCase(text.charAt(start+i)) ) return false;
+        }
+        return true;
+    }
+}
@@ -1,12 +1,22 @@
+import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
 
+/*
+    A room.  Locations loaded by WorldTemplate are shared by every game, so
+    once loading is done they are treated as read-only; per-player changes
+    (items moved, rooms visited) are kept by CreateWorld.
+*/
 class Location {
+    protected int	index;		// Room number in the world.
     protected String 	description;
     protected String 	name;
-    protected boolean	beenHere = false;
-    protected Vector 	items = new Vector();
+    protected Inventory	items = new Inventory();	// Items here when a game starts.
     protected Vector	exits = new Vector();
+    protected List	exitView = Collections.unmodifiableList( exits );
+    protected Exit[]	exitTo = new Exit[ Exit.DOWN+1 ];	// Exits by direction.
 
+    protected int	zone = SoundZones.NONE;	// Sound zone ID.
     protected String	soundFile; // Background music file (if any)
     public void setSound( String soundFile ) {
         this.soundFile = soundFile;
@@ -14,13 +24,32 @@ class Location {
     public String getSound() {
         return soundFile;
     }
+    // Put the room in a sound zone, which plays soundFile (null for silence).
+    public void setZone( int zone, String soundFile ) {
+        this.zone = zone;
+        this.soundFile = soundFile;
+    }
+    // Return the room's sound zone ID (SoundZones.NONE if it isn't in one).
+    public int getZone() {
+        return zone;
+    }
 
     // Basic location creation.
     Location( String name, String description ) {
+        this( 0, name, description );
+    }
+    // Location that is room number index in the world.
+    Location( int index, String name, String description ) {
+        this.index = index;
         this.description = description;
         this.name = name;
     }
 
+    // Return the room number.
+    public int getIndex() {
+        return index;
+    }
+
     // Set/change room description.
     public void setDescription( String desc ) {
         description = desc;
@@ -41,43 +70,52 @@ class Location {
     public void addExit( Exit exit )
     {
         exits.add( exit );
+        int direction = exit.getDirection();
+        if ( direction>Exit.UNDEFINED && direction<exitTo.length ) exitTo[direction] = exit;
     }
     // Remove an exit from this location.
     public void removeExit( Exit exit )
     {
         if ( exits.contains(exit) ) exits.remove( exit );
+        int direction = exit.getDirection();
+        if ( direction>Exit.UNDEFINED && direction<exitTo.length && exitTo[direction]==exit ) {
+            exitTo[direction] = null;
+        }
+    }
+    // Return the exit leading in a direction (Exit.NORTH etc.), or null.
+    public Exit getExit( int direction )
+    {
+        if ( direction<=Exit.UNDEFINED || direction>=exitTo.length ) return null;
+        return exitTo[direction];
     }
-    // Return a vector of exits.
-    public Vector getExits()
+    // Return a list of exits.
+    public List getExits()
     {
-        // Return a clone, as we don't want an external
-        // item to modify our original vector
-        return (Vector)exits.clone();
+        // Return a read-only view, as we don't want an external
+        // item to modify our original vector (and a clone costs
+        // a copy every time we look).
+        return exitView;
     }
     // Add (drop) an item in this location.
     public void addItem( Item item )
     {
-        items.add( item );
+        items.addItem( item );
     }
     // Remove (get) an item from this location.
     public void removeItem( Item item )
     {
-        if ( items.contains(item) ) items.remove(item);
-    }
-    // Returns a vector of items
-    public Vector getItems()
-    {
-        return (Vector)items.clone();
+        items.removeItem( item );
     }
-    // Set/change been here status.
-    public void beenHere( boolean beenHere )
+    // Returns a (read-only) list of items
+    public List getItems()
     {
-        this.beenHere = beenHere;
+        return items.getItems();
     }
-    // Return been here status.
-    public boolean beenHere()
+    // Return the items here, keyword index and all.  Don't change it;
+    // CreateWorld copies it before a player moves anything.
+    public Inventory getInventory()
     {
-        return beenHere;
+        return items;
     }
 }
 
@@ -0,0 +1,77 @@
+/*
+    The game's console messages, with levels, so the chatter can be turned
+    down without touching the code.  Messages at or above the current
+    level are printed to System.out as they always were; anything below
+    it costs one int comparison.  Where building the message would cost
+    something itself, check first:
+
+        if ( Log.debugging() ) Log.debug( "Sound file '"+soundFile+"' loaded." );
+
+    The level starts at INFO, or whatever the hm.log system property says
+    (debug, info, warning, error or off), and can be changed while running
+    (GameMetrics offers it over JMX).
+*/
+
+public class Log {
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARNING = 2;
+    public static final int ERROR = 3;
+    public static final int OFF = 4;
+
+    private static final String[] NAMES = { "debug", "info", "warning", "error", "off" };
+
+    private static volatile int level = initialLevel();
+
+    private static int initialLevel() {
+        try {
+            int level = parseLevel( System.getProperty("hm.log") );
+            return level<0 ? INFO : level;
+        } catch (SecurityException e) {		// An applet may not read properties.
+            return INFO;
+        }
+    }
+
+    // Return the level named (in any case), or -1 if there isn't one.
+    public static int parseLevel( String name ) {
+        for ( int i=0; name!=null && i<NAMES.length; i++ ) {
+            if ( NAMES[i].equalsIgnoreCase(name.trim()) ) return i;
+        }
+        return -1;
+    }
+    public static String getLevelName( int level ) {
+        return NAMES[level];
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+    public static void setLevel( int newLevel ) {
+        level = Math.max( DEBUG, Math.min(newLevel, OFF) );
+    }
+
+    // Would a message at this level be printed?
+    public static boolean isLoggable( int at ) {
+        return at>=level;
+    }
+    public static boolean debugging() {
+        return level<=DEBUG;
+    }
+
+    public static void debug( String message ) {
+        if ( level<=DEBUG ) print( message );
+    }
+    public static void info( String message ) {
+        if ( level<=INFO ) print( message );
+    }
+    public static void warning( String message ) {
+        if ( level<=WARNING ) print( message );
+    }
+    public static void error( String message ) {
+        if ( level<=ERROR ) print( message );
+    }
+
+    private static void print( String message ) {
+        System.out.println( message );
+    }
+}
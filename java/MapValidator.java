@@ -0,0 +1,455 @@
+/*
+    Checks a map for mistakes, and for the kind of thing that is usually
+    a mistake:
+
+    - errors: exits to rooms that don't exist (past the end, or
+      negative), exits out of the unused room 0, items in rooms that
+      don't exist.  The game won't load a map with these.
+    - rooms that can't be reached from the start room (room 1), and the
+      items in them,
+    - rooms you can get into but never back to the start from,
+    - dead ends (rooms with no exits at all),
+    - one-way exits (nothing leads back from where they go),
+    - the strongly connected components: groups of rooms that can all
+      reach each other.  A map you can wander freely is one component.
+
+    The per-room checks are split over a ForkJoinPool in chunks of CHUNK
+    rooms, and the graph searches (forward and back from the start room,
+    and the components) run as parallel tasks alongside them, so a
+    100,000 room map is checked in a few tens of milliseconds.
+
+    WorldTemplate.get() checks each map it loads and logs anything
+    suspicious.  From the command line,
+
+        java MapValidator [-dir .] [-limit 20]
+
+    reads hm_map.csv and hm_items.csv itself (so it can report on files
+    the game refuses to load), lists up to -limit of each kind of problem,
+    and exits with status 1 if there are errors.
+*/
+
+import java.io.*;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class MapValidator {
+    static final int CHUNK = 8192;		// Rooms per fork-join task.
+    static final int START = 1;			// Where a game begins.
+
+    // Per-room flags from the room checks.
+    static final byte BAD_EXIT = 1;
+    static final byte DEAD_END = 2;
+    static final byte ONE_WAY = 4;
+
+    private int		numRooms;
+    private int[]	exits;		// 6 per room (N,S,W,E,U,D), 0 for no exit.
+    private int		numItems;
+    private int[]	itemLocation;	// Room number, 0 for the player's inventory.
+    private byte[]	flags;		// BAD_EXIT etc. by room.
+    private int[]	inStart;	// Exits into room r come from inFrom[inStart[r]..inStart[r+1]-1].
+    private int[]	inFrom;
+    private boolean[]	reachable;	// From the start room.
+    private boolean[]	returns;	// Can get back to the start room.
+    private int[]	component;	// Strongly connected component of each room.
+    private int		numComponents;
+
+    // What a check found.  Rooms are listed by number, exits as room*6+direction-1.
+    public static class Report {
+        public Vector	errors = new Vector();	// Messages.
+        public int	rooms, exits, items;
+        public int[]	unreachable;
+        public int[]	unreachableItems;
+        public int[]	trapped;		// Reachable, but no way back to the start.
+        public int[]	deadEnds;
+        public int[]	oneWay;
+        public int[]	oneWayTo;		// Where each one-way exit goes.
+        public int	components;		// Strongly connected components (rooms 1 on).
+        public int	startComponent;		// Rooms in the start room's component.
+        public long	nanos;			// How long the check took.
+
+        // Were there errors (as opposed to things that look odd)?
+        public boolean hasErrors() {
+            return errors.size()>0;
+        }
+        // Does anything look odd that a map author would want to know about?
+        public boolean hasWarnings() {
+            return unreachable.length>0 || trapped.length>0 || deadEnds.length>0;
+        }
+
+        // Write out what was found, listing up to limit of each kind of
+        // problem.  names are the room names, or null.
+        public void print( PrintStream out, String[] names, int limit ) {
+            out.println( rooms+" rooms, "+exits+" exits, "+items+" items." );
+            if ( errors.size()==0 ) out.println( "No errors." );
+            for ( int i=0; i<errors.size() && i<limit; i++ ) out.println( "Error: "+errors.elementAt(i) );
+            if ( errors.size()>limit ) out.println( "...and "+(errors.size()-limit)+" more errors." );
+            list( out, unreachable.length+" rooms can't be reached from the start", unreachable, names, limit );
+            list( out, unreachableItems.length+" items are in rooms that can't be reached", null, null, 0 );
+            list( out, trapped.length+" rooms have no way back to the start", trapped, names, limit );
+            list( out, deadEnds.length+" dead ends", deadEnds, names, limit );
+            out.println( oneWay.length+" one-way exits"+(oneWay.length>0 ? ":" : ".") );
+            for ( int i=0; i<oneWay.length && i<limit; i++ ) {
+                int room = oneWay[i]/6, direction = oneWay[i]%6+1;
+                out.println( "    "+room( room, names )+" "+Exit.dirName[direction]+" to "+room( oneWayTo[i], names ) );
+            }
+            if ( oneWay.length>limit ) out.println( "    ..." );
+            out.println( components+" strongly connected components; the start room's has "
+                         +startComponent+" rooms." );
+        }
+
+        // Log what matters when a map is loaded: warnings for rooms that
+        // can't be reached, traps and dead ends, the rest when debugging.
+        public void log() {
+            for ( int i=0; i<errors.size(); i++ ) Log.error( "Map: "+errors.elementAt(i) );
+            if ( unreachable.length>0 ) Log.warning( "Map: "+unreachable.length+" rooms can't be reached from the start: "+rooms(unreachable) );
+            if ( trapped.length>0 ) Log.warning( "Map: "+trapped.length+" rooms have no way back to the start: "+rooms(trapped) );
+            if ( deadEnds.length>0 ) Log.warning( "Map: "+deadEnds.length+" dead ends: "+rooms(deadEnds) );
+            if ( Log.debugging() ) {
+                Log.debug( "Map: "+oneWay.length+" one-way exits, "+components+" strongly connected components, checked in "
+                           +nanos/1000+"us" );
+            }
+        }
+
+        // Return the first few room numbers of a list.
+        private static String rooms( int[] rooms ) {
+            StringBuffer buf = new StringBuffer();
+            for ( int i=0; i<rooms.length && i<10; i++ ) buf.append( i>0 ? ", " : "" ).append( rooms[i] );
+            if ( rooms.length>10 ) buf.append( "..." );
+            return buf.toString();
+        }
+
+        private static void list( PrintStream out, String title, int[] rooms, String[] names, int limit ) {
+            out.println( title+(rooms!=null && rooms.length>0 ? ":" : ".") );
+            for ( int i=0; rooms!=null && i<rooms.length && i<limit; i++ ) {
+                out.println( "    "+room( rooms[i], names ) );
+            }
+            if ( rooms!=null && rooms.length>limit ) out.println( "    ..." );
+        }
+        private static String room( int room, String[] names ) {
+            return names==null || names[room]==null ? "Room "+room : "Room "+room+" ("+names[room]+")";
+        }
+    }
+
+    // Check a loaded world.
+    public static Report validate( WorldTemplate world ) {
+        int[] itemLocation = new int[ world.getNumItems() ];
+        for ( int i=0; i<itemLocation.length; i++ ) itemLocation[i] = world.getItemLocation( i );
+        return validate( world.getNumLocations(), world.getExitTable(), itemLocation.length, itemLocation );
+    }
+
+    // Check a map given as tables: 6 exits per room and each item's room.
+    public static Report validate( int numRooms, int[] exits, int numItems, int[] itemLocation ) {
+        long start = System.nanoTime();
+        MapValidator v = new MapValidator();
+        v.numRooms = numRooms;
+        v.exits = exits;
+        v.numItems = numItems;
+        v.itemLocation = itemLocation;
+        v.flags = new byte[ numRooms ];
+        v.reverse();
+        Report report = v.run();
+        report.nanos = System.nanoTime()-start;
+        return report;
+    }
+
+    // Return where an exit leads if it is a real exit, otherwise 0.
+    private int target( int room, int direction ) {
+        int to = exits[ room*6+direction ];
+        return to>0 && to<numRooms && room!=0 ? to : 0;
+    }
+
+    // Index the exits by where they lead, for searching backwards.
+    private void reverse() {
+        inStart = new int[ numRooms+1 ];
+        for ( int r=0; r<numRooms; r++ ) {
+            for ( int d=0; d<6; d++ ) inStart[ target(r, d)+1 ]++;
+        }
+        if ( numRooms>0 ) inStart[1] = 0;	// Not exits.
+        for ( int r=0; r<numRooms; r++ ) inStart[r+1] += inStart[r];
+        inFrom = new int[ inStart[numRooms] ];
+        int[] fill = new int[ numRooms ];
+        for ( int r=0; r<numRooms; r++ ) {
+            for ( int d=0; d<6; d++ ) {
+                int to = target( r, d );
+                if ( to!=0 ) inFrom[ inStart[to]+fill[to]++ ] = r;
+            }
+        }
+    }
+
+    private Report run() {
+        if ( numRooms<=CHUNK ) {	// Not worth waking up the pool for.
+            checkRooms( 0, numRooms );
+            reachable = search( true );
+            returns = search( false );
+            components();
+        } else {
+            check();
+        }
+        return report();
+    }
+
+    // Run the room checks and the searches on the fork-join pool.
+    private void check() {
+        ForkJoinPool.commonPool().invoke( new RecursiveAction() {
+            protected void compute() {
+                invokeAll( new RoomChecks(0, numRooms), new RecursiveAction() {
+                    protected void compute() {
+                        reachable = search( true );
+                    }
+                }, new RecursiveAction() {
+                    protected void compute() {
+                        returns = search( false );
+                    }
+                }, new RecursiveAction() {
+                    protected void compute() {
+                        components();
+                    }
+                } );
+            }
+        } );
+    }
+
+    // Gather up the results.
+    private Report report() {
+        Report report = new Report();
+        report.rooms = numRooms;
+        report.items = numItems;
+        Vector unreachable = new Vector(), trapped = new Vector(), deadEnds = new Vector(), oneWay = new Vector();
+        for ( int r=0; r<numRooms; r++ ) {
+            for ( int d=0; d<6; d++ ) if ( target(r, d)!=0 ) report.exits++;
+            if ( flags[r]!=0 ) {
+                for ( int d=0; d<6; d++ ) {
+                    int to = exits[r*6+d];
+                    if ( to<0 || to>=numRooms ) {
+                        report.errors.add( "Room "+r+" has an exit "+Exit.dirName[d+1]+" to room "+to
+                                           +", which doesn't exist" );
+                    } else if ( r==0 && to!=0 ) {
+                        report.errors.add( "Room 0 isn't used, but has an exit "+Exit.dirName[d+1] );
+                    } else if ( (flags[r]&ONE_WAY)!=0 && to!=0 && !leadsTo(to, r) ) {
+                        oneWay.add( Integer.valueOf(r*6+d) );
+                    }
+                }
+                if ( (flags[r]&DEAD_END)!=0 ) deadEnds.add( Integer.valueOf(r) );
+            }
+            if ( r>=START ) {
+                if ( !reachable[r] ) unreachable.add( Integer.valueOf(r) );
+                else if ( !returns[r] ) trapped.add( Integer.valueOf(r) );
+            }
+        }
+        Vector unreachableItems = new Vector();
+        for ( int i=0; i<numItems; i++ ) {
+            int room = itemLocation[i];
+            if ( room<0 || room>=numRooms ) {
+                report.errors.add( "Item "+i+" is in room "+room+", which doesn't exist" );
+            } else if ( room!=0 && !reachable[room] ) {
+                unreachableItems.add( Integer.valueOf(i) );
+            }
+        }
+        report.unreachable = toArray( unreachable );
+        report.unreachableItems = toArray( unreachableItems );
+        report.trapped = toArray( trapped );
+        report.deadEnds = toArray( deadEnds );
+        report.oneWay = toArray( oneWay );
+        report.oneWayTo = new int[ report.oneWay.length ];
+        for ( int i=0; i<report.oneWay.length; i++ ) report.oneWayTo[i] = exits[ report.oneWay[i] ];
+        report.components = numComponents;
+        if ( numRooms>START ) {
+            for ( int r=START; r<numRooms; r++ ) if ( component[r]==component[START] ) report.startComponent++;
+        }
+        return report;
+    }
+
+    private static int[] toArray( Vector numbers ) {
+        int[] array = new int[ numbers.size() ];
+        for ( int i=0; i<array.length; i++ ) array[i] = ((Integer)numbers.elementAt( i )).intValue();
+        return array;
+    }
+
+    // Does any exit from room lead to room "to"?
+    private boolean leadsTo( int room, int to ) {
+        for ( int d=0; d<6; d++ ) if ( exits[room*6+d]==to ) return true;
+        return false;
+    }
+
+    // Flags rooms (bad exits, dead end, one-way exits), a chunk at a time.
+    class RoomChecks extends RecursiveAction {
+        int	from, to;
+
+        RoomChecks( int from, int to ) {
+            this.from = from;
+            this.to = to;
+        }
+        protected void compute() {
+            if ( to-from>CHUNK ) {
+                int middle = (from+to)>>>1;
+                invokeAll( new RoomChecks(from, middle), new RoomChecks(middle, to) );
+            } else {
+                checkRooms( from, to );
+            }
+        }
+    }
+
+    // Flag each room in [from, to).
+    private void checkRooms( int from, int to ) {
+        for ( int r=from; r<to; r++ ) {
+            byte flag = 0;
+            boolean anyExit = false;
+            for ( int d=0; d<6; d++ ) {
+                int target = exits[r*6+d];
+                if ( target<0 || target>=numRooms || (r==0 && target!=0) ) {
+                    flag |= BAD_EXIT;
+                } else if ( target!=0 ) {
+                    anyExit = true;
+                    if ( !leadsTo(target, r) ) flag |= ONE_WAY;
+                }
+            }
+            if ( r>=START && !anyExit ) flag |= DEAD_END;
+            flags[r] = flag;
+        }
+    }
+
+    // Return which rooms can be reached from the start room (forward),
+    // or can reach it (backward).
+    private boolean[] search( boolean forward ) {
+        boolean[] seen = new boolean[ numRooms ];
+        if ( numRooms<=START ) return seen;
+        int[] queue = new int[ numRooms ];
+        int head = 0, tail = 0;
+        queue[ tail++ ] = START;
+        seen[START] = true;
+        while ( head<tail ) {
+            int room = queue[ head++ ];
+            if ( forward ) {
+                for ( int d=0; d<6; d++ ) {
+                    int next = target( room, d );
+                    if ( next!=0 && !seen[next] ) {
+                        seen[next] = true;
+                        queue[ tail++ ] = next;
+                    }
+                }
+            } else {
+                for ( int i=inStart[room]; i<inStart[room+1]; i++ ) {
+                    int next = inFrom[i];
+                    if ( next!=0 && !seen[next] ) {
+                        seen[next] = true;
+                        queue[ tail++ ] = next;
+                    }
+                }
+            }
+        }
+        return seen;
+    }
+
+    // Number the strongly connected components of rooms 1 on (Tarjan's
+    // algorithm, with explicit stacks so a long corridor can't overflow
+    // the thread's).
+    private void components() {
+        component = new int[ numRooms ];
+        int[] index = new int[ numRooms ];	// Order first visited, from 1; 0 is not yet.
+        int[] low = new int[ numRooms ];
+        int[] stack = new int[ numRooms ];	// Rooms not yet given a component.
+        boolean[] onStack = new boolean[ numRooms ];
+        int[] path = new int[ numRooms ];	// The depth-first search's own stack,
+        int[] nextExit = new int[ numRooms ];	// and the exit each room on it tries next.
+        int count = 0, top = 0;
+        numComponents = 0;
+        for ( int root=START; root<numRooms; root++ ) {
+            if ( index[root]!=0 ) continue;
+            int depth = 0;
+            path[0] = root;
+            index[root] = low[root] = ++count;
+            stack[ top++ ] = root;
+            onStack[root] = true;
+            while ( depth>=0 ) {
+                int room = path[depth];
+                if ( nextExit[room]<6 ) {
+                    int next = target( room, nextExit[room]++ );
+                    if ( next==0 ) continue;
+                    if ( index[next]==0 ) {
+                        index[next] = low[next] = ++count;
+                        stack[ top++ ] = next;
+                        onStack[next] = true;
+                        path[ ++depth ] = next;
+                    } else if ( onStack[next] && index[next]<low[room] ) {
+                        low[room] = index[next];
+                    }
+                    continue;
+                }
+                // Done with room: is it the root of a component?
+                if ( low[room]==index[room] ) {
+                    int member;
+                    do {
+                        member = stack[ --top ];
+                        onStack[member] = false;
+                        component[member] = numComponents;
+                    } while ( member!=room );
+                    numComponents++;
+                }
+                depth--;
+                if ( depth>=0 && low[room]<low[path[depth]] ) low[ path[depth] ] = low[room];
+            }
+        }
+    }
+
+    public static void main( String[] argv ) throws IOException {
+        File dir = new File( "." );
+        int limit = 20;
+        for ( int i=0; i<argv.length; i++ ) {
+            if ( argv[i].equals("-dir") && i+1<argv.length ) dir = new File( argv[++i] );
+            else if ( argv[i].equals("-limit") && i+1<argv.length ) limit = Integer.parseInt( argv[++i] );
+            else {
+                System.out.println( "Usage: java MapValidator [-dir csvdir] [-limit 20]" );
+                return;
+            }
+        }
+
+        // The map: six exits, a name and a description per room.
+        int numRooms = 0;
+        int[] exits = new int[ 64*6 ];
+        String[] names = new String[ 64 ];
+        CSVReader csv = new CSVReader( new InputStreamReader(new FileInputStream(new File(dir, "hm_map.csv"))) );
+        try {
+            while ( csv.nextRecord() ) {
+                if ( numRooms==names.length ) {
+                    int[] moreExits = new int[ exits.length*2 ];
+                    System.arraycopy( exits, 0, moreExits, 0, exits.length );
+                    exits = moreExits;
+                    String[] moreNames = new String[ names.length*2 ];
+                    System.arraycopy( names, 0, moreNames, 0, names.length );
+                    names = moreNames;
+                }
+                for ( int j=0; j<6; j++ ) exits[numRooms*6+j] = csv.nextInt();
+                names[numRooms] = csv.nextInterned();
+                numRooms++;
+            }
+        } finally {
+            csv.close();
+        }
+        // The items: just where each one is.
+        int numItems = 0;
+        int[] itemLocation = new int[ 32 ];
+        File itemFile = new File( dir, "hm_items.csv" );
+        if ( itemFile.exists() ) {
+            csv = new CSVReader( new InputStreamReader(new FileInputStream(itemFile)) );
+            try {
+                while ( csv.nextRecord() ) {
+                    if ( numItems==itemLocation.length ) {
+                        int[] more = new int[ numItems*2 ];
+                        System.arraycopy( itemLocation, 0, more, 0, numItems );
+                        itemLocation = more;
+                    }
+                    itemLocation[ numItems++ ] = csv.nextInt();
+                }
+            } finally {
+                csv.close();
+            }
+        }
+
+        Report report = validate( numRooms, exits, numItems, itemLocation );
+        report.print( System.out, names, limit );
+        System.out.println( "Checked in "+report.nanos/100000/10.0+"ms ("
+                            +ForkJoinPool.commonPool().getParallelism()+" worker threads)." );
+        if ( report.hasErrors() ) System.exit( 1 );
+    }
+}
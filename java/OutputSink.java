@@ -0,0 +1,35 @@
+/*
+    Somewhere for the game's output to go.  A command's whole response is
+    built up in the sink's buffer (GameEngine appends to it bit by bit:
+    every exit, every ", " and "and ") and then handed over in one go by
+    flush(), so a TextArea gets one update per command instead of one per
+    fragment, and a socket gets one write.  The buffer is reused for every
+    command.
+
+    Subclasses decide where the text ends up: TextAreaSink for the applet,
+    StreamSink for the console or a socket, CollectorSink to keep it (for
+    tools and benchmarks).
+*/
+
+public abstract class OutputSink {
+    private StringBuffer	buffer = new StringBuffer( 1024 );	// This command's response.
+
+    // Return the buffer to build the response in.
+    public StringBuffer getBuffer() {
+        return buffer;
+    }
+    // Add some text to the response.
+    public OutputSink print( String text ) {
+        buffer.append( text );
+        return this;
+    }
+    // Send whatever has been built up and empty the buffer for next time.
+    public void flush() {
+        if ( buffer.length()==0 ) return;
+        write( buffer );
+        buffer.setLength( 0 );
+    }
+
+    // Deliver one response.  Don't keep a reference to text; it gets reused.
+    protected abstract void write( StringBuffer text );
+}
@@ -1,27 +1,22 @@
-import java.util.StringTokenizer;
-
+/*
+    The original verb/noun parser, kept for anything that still wants the
+    parts back as Strings.  The game itself uses a CommandTokenizer
+    directly, which doesn't create any.  The noun is now the whole noun
+    phrase ("old book"), where it used to be only the last word.
+*/
 public class Parse {
-    private String verb = null;
-    private String noun = null;
+    private CommandTokenizer	tokenizer = new CommandTokenizer();
 
     public void parse(String s) {
-        StringTokenizer st = new StringTokenizer(s);
-        while (st.hasMoreTokens()) {
-            String next = st.nextToken();
-            if (verb==null) {
-                verb=next;
-            } else {
-                noun=next;
-            }
-        }
+        tokenizer.tokenize(s);
     }
-    
+
     public String getNoun()
     {
-        return noun;
+        return tokenizer.getNoun();
     }
     public String getVerb()
     {
-        return verb;
+        return tokenizer.getVerb();
     }
 }
@@ -1,4 +1,4 @@
-import java.util.Vector;
+import java.util.List;
 
 class Player {
     private Location 	currentLocation;
@@ -24,7 +24,7 @@ class Player {
         inventory.removeItem( item );
     }
 
-    public Vector getItems()
+    public List getItems()
     {
         return inventory.getItems();
     }
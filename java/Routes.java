@@ -0,0 +1,276 @@
+/*
+    Shortest routes between rooms, for GO TO / TRAVEL and for bots.  A
+    route is asked for one step at a time: nextStep(from, to) is the
+    direction of the first exit to take from room "from" on a shortest
+    way to room "to", and following it again from the next room gets the
+    rest of the way.
+
+    For a map of up to TABLE_LIMIT rooms every answer is worked out when
+    the world loads: a breadth-first search back from each room along the
+    exits gives that room's row of an n*n table of next steps, one byte
+    each (the stock map's is under 3K).  Bigger maps would need too much
+    table, so a row (a "tree" leading to one room) is searched for when it
+    is first wanted, and the last CACHE_SIZE of them are kept, least
+    recently used going first.  Either way a query that finds its row
+    allocates nothing and takes nanoseconds, and since rows never change
+    once made, any number of threads can ask at once.
+
+    One Routes belongs to each WorldTemplate (see getRoutes()), so it only
+    knows the map as loaded: exits are one-way, and rooms that can't be
+    reached from a room have no step.
+
+    Finding a room by name searches forward from the player when several
+    rooms match.  The search's queue and marks are kept between queries
+    (a few spare sets, lent to whichever thread is asking), and marks are
+    told apart by a number that goes up with every search, so nothing is
+    cleared or allocated once they exist.  They are lent rather than
+    kept per thread because with a virtual thread per session, per
+    thread would mean a new set for nearly every query.
+*/
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Locale;
+
+public final class Routes {
+    public static final int TABLE_LIMIT = 2048;	// Most rooms to precompute (4M of table).
+    public static final int CACHE_SIZE = 64;	// Trees kept for bigger maps.
+    static final int SPARES = 8;		// Most search spaces kept for reuse.
+
+    private int		numRooms;
+    private int[]	exits;		// The world's exits, 6 per room (N,S,W,E,U,D).
+    private int[]	inStart;	// Exits into room r are inFrom/inDir[inStart[r]..inStart[r+1]-1],
+    private int[]	inFrom;		// from this room
+    private byte[]	inDir;		// in this direction.
+    private byte[]	table;		// Next steps, numRooms per destination (small maps),
+    private int[]	cachedTo;	// or the trees for these destinations
+    private byte[][]	cachedTree;
+    private long[]	cachedUse;	// and when each was last used (big maps).
+    private long	clock = 0;
+    private Hashtable	byName = new Hashtable();	// Upper-case room name -> int[] rooms.
+    private String[]	names;		// Upper-case, by room number.
+    private Scratch[]	spare = new Scratch[ SPARES ];	// Search space not lent out,
+    private int		spares = 0;			// and how much of it there is.
+
+    // What one search needs: a queue of rooms, and a mark per room.
+    // mark[r] is this search's number if room r is wanted, one more if it
+    // has been seen; anything else is left over from an earlier search.
+    private static final class Scratch {
+        int[]	queue;
+        int[]	mark;
+        int	search = 0;
+
+        Scratch( int numRooms ) {
+            queue = new int[ numRooms ];
+            mark = new int[ numRooms ];
+        }
+        // Start a new search and return its number.
+        int begin() {
+            if ( search>=Integer.MAX_VALUE-2 ) {	// Run out of numbers: start over.
+                Arrays.fill( mark, 0 );
+                search = 0;
+            }
+            search += 2;
+            return search;
+        }
+    }
+
+    // Work out the routes for a world's map.  exits is the world's own
+    // table, shared, not copied.
+    Routes( WorldTemplate world, int[] exits ) {
+        this( world, exits, TABLE_LIMIT );
+    }
+    // The same, but with a table only up to tableLimit rooms (so checks
+    // can try both ways on the same map).
+    Routes( WorldTemplate world, int[] exits, int tableLimit ) {
+        numRooms = world.getNumLocations();
+        this.exits = exits;
+        // Turn the exits around, so searches can go back from a destination.
+        inStart = new int[ numRooms+1 ];
+        for ( int r=0; r<numRooms; r++ ) {
+            for ( int d=Exit.NORTH; d<=Exit.DOWN; d++ ) inStart[ exitTarget(r, d)+1 ]++;
+        }
+        if ( numRooms>0 ) inStart[1] = 0;	// Exits leading to room 0 are no exits.
+        for ( int r=0; r<numRooms; r++ ) inStart[r+1] += inStart[r];
+        inFrom = new int[ inStart[numRooms] ];
+        inDir = new byte[ inStart[numRooms] ];
+        int[] fill = new int[ numRooms ];
+        for ( int r=0; r<numRooms; r++ ) {
+            for ( int d=Exit.NORTH; d<=Exit.DOWN; d++ ) {
+                int to = exitTarget( r, d );
+                if ( to==0 ) continue;
+                int at = inStart[to]+fill[to]++;
+                inFrom[at] = r;
+                inDir[at] = (byte)d;
+            }
+        }
+
+        names = new String[ numRooms ];
+        for ( int r=1; r<numRooms; r++ ) {
+            names[r] = world.getLocation( r ).getName().toUpperCase( Locale.ROOT );
+            int[] same = (int[])byName.get( names[r] );
+            int[] more = new int[ same==null ? 1 : same.length+1 ];
+            if ( same!=null ) System.arraycopy( same, 0, more, 0, same.length );
+            more[ more.length-1 ] = r;
+            byName.put( names[r], more );
+        }
+
+        if ( numRooms<=tableLimit ) {
+            table = new byte[ numRooms*numRooms ];
+            int[] queue = new int[ numRooms ];
+            for ( int to=1; to<numRooms; to++ ) search( to, table, to*numRooms, queue );
+        } else {
+            cachedTo = new int[ CACHE_SIZE ];
+            cachedTree = new byte[ CACHE_SIZE ][];
+            cachedUse = new long[ CACHE_SIZE ];
+            for ( int i=0; i<CACHE_SIZE; i++ ) cachedTo[i] = -1;
+        }
+    }
+
+    private int exitTarget( int room, int direction ) {
+        return exits[ room*6+direction-1 ];
+    }
+
+    // Search back from room "to", filling in tree[offset+r] with the
+    // direction to leave room r in, for every room r that can get there.
+    private void search( int to, byte[] tree, int offset, int[] queue ) {
+        int head = 0, tail = 0;
+        queue[ tail++ ] = to;
+        while ( head<tail ) {
+            int room = queue[ head++ ];
+            for ( int i=inStart[room]; i<inStart[room+1]; i++ ) {
+                int from = inFrom[i];
+                if ( from==to || tree[offset+from]!=0 ) continue;
+                tree[ offset+from ] = inDir[i];
+                queue[ tail++ ] = from;
+            }
+        }
+    }
+
+    // Return the tree of steps leading to room "to" (big maps).
+    private byte[] tree( int to ) {
+        synchronized ( this ) {
+            for ( int i=0; i<CACHE_SIZE; i++ ) {
+                if ( cachedTo[i]==to ) {
+                    cachedUse[i] = ++clock;
+                    return cachedTree[i];
+                }
+            }
+        }
+        // Search outside the lock, so other rooms' routes aren't held up.
+        byte[] tree = new byte[ numRooms ];
+        Scratch scratch = borrow();
+        search( to, tree, 0, scratch.queue );
+        giveBack( scratch );
+        synchronized ( this ) {
+            int oldest = 0;
+            for ( int i=0; i<CACHE_SIZE; i++ ) {
+                if ( cachedTo[i]==to ) return cachedTree[i];	// Somebody beat us to it.
+                if ( cachedUse[i]<cachedUse[oldest] ) oldest = i;
+            }
+            cachedTo[oldest] = to;
+            cachedTree[oldest] = tree;
+            cachedUse[oldest] = ++clock;
+        }
+        return tree;
+    }
+
+    // Return the direction (Exit.NORTH..DOWN) to go from room "from" on a
+    // shortest way to room "to", or Exit.UNDEFINED if there's no way there
+    // or you're there already.
+    public int nextStep( int from, int to ) {
+        if ( from<=0 || to<=0 || from>=numRooms || to>=numRooms ) return Exit.UNDEFINED;
+        if ( table!=null ) return table[ to*numRooms+from ];
+        return tree( to )[ from ];
+    }
+
+    // Return how many moves the shortest way from one room to another
+    // takes, or -1 if there is no way.
+    public int distance( int from, int to ) {
+        int moves = 0;
+        for ( int room=from; room!=to; moves++ ) {
+            int direction = nextStep( room, to );
+            if ( direction==Exit.UNDEFINED ) return -1;
+            room = exitTarget( room, direction );
+        }
+        return moves;
+    }
+
+    // Return the room called name (case doesn't matter) that is nearest to
+    // room "from", or failing that the nearest whose name contains it.
+    // Returns 0 if no such room can be reached, -1 if there is no such room.
+    public int findRoom( String name, int from ) {
+        String key = name.trim().toUpperCase( Locale.ROOT );	// As names[] are, whatever the locale.
+        if ( key.length()==0 ) return -1;
+        int[] rooms = (int[])byName.get( key );
+        if ( rooms!=null && rooms.length==1 ) return reachable( from, rooms[0] );
+        Scratch scratch = borrow();
+        try {
+            int wanted = scratch.begin();
+            int count = 0, only = 0;
+            if ( rooms!=null ) {
+                for ( int i=0; i<rooms.length; i++ ) scratch.mark[ rooms[i] ] = wanted;
+                count = rooms.length;
+            } else {
+                for ( int r=1; r<numRooms; r++ ) {
+                    if ( names[r].indexOf(key)<0 ) continue;
+                    scratch.mark[r] = wanted;
+                    only = r;
+                    count++;
+                }
+            }
+            if ( count==0 ) return -1;
+            if ( count==1 ) return reachable( from, only );
+            return nearest( from, scratch, wanted );
+        } finally {
+            giveBack( scratch );
+        }
+    }
+
+    // Return room if it can be got to from room "from", otherwise 0.
+    private int reachable( int from, int room ) {
+        return from==room || nextStep(from, room)!=Exit.UNDEFINED ? room : 0;
+    }
+
+    // Return whichever room marked wanted is fewest moves from room
+    // "from", 0 if none can be reached.
+    private int nearest( int from, Scratch scratch, int wanted ) {
+        int[] mark = scratch.mark;
+        int[] queue = scratch.queue;
+        int seen = wanted+1;
+        if ( mark[from]==wanted ) return from;
+        // Search forward from here; the first wanted room found is nearest.
+        int head = 0, tail = 0;
+        queue[ tail++ ] = from;
+        mark[from] = seen;
+        while ( head<tail ) {
+            int room = queue[ head++ ];
+            for ( int d=Exit.NORTH; d<=Exit.DOWN; d++ ) {
+                int next = exitTarget( room, d );
+                if ( next==0 || mark[next]==seen ) continue;
+                if ( mark[next]==wanted ) return next;
+                mark[next] = seen;
+                queue[ tail++ ] = next;
+            }
+        }
+        return 0;
+    }
+
+    // Lend out a search space, making one if none are spare.
+    private Scratch borrow() {
+        synchronized ( spare ) {
+            if ( spares>0 ) {
+                Scratch scratch = spare[ --spares ];
+                spare[ spares ] = null;
+                return scratch;
+            }
+        }
+        return new Scratch( numRooms );
+    }
+    // Take a search space back (or let it go, if there are enough spare).
+    private void giveBack( Scratch scratch ) {
+        synchronized ( spare ) {
+            if ( spares<SPARES ) spare[ spares++ ] = scratch;
+        }
+    }
+}
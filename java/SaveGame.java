@@ -0,0 +1,185 @@
+/*
+    Saves a game (a GameSession) as a few dozen bytes, and restores it.
+    Only what the player has changed is written; the world itself comes
+    from the WorldTemplate, which both ends must share.  Numbers are
+    written as varints (seven bits a byte, high bit set if more follow),
+    so small numbers take one byte:
+
+        'H' 'M' 'S' version
+        rooms, items                 which map this is for (checked on restore)
+        flags                        bit 0: VERBOSE
+        room                         where the player is
+        n, n bytes                   "been here" bits, rooms 0..8n-1
+        holders                      how many item lists follow
+        room, count, count items     an item list: room 0 is the player's
+                                     inventory, then every room whose
+                                     items have changed, by item number
+
+    Rooms not listed still hold what the map put in them, so a game where
+    nothing has moved saves its items in a couple of bytes, and the lists
+    keep the order items were dropped in.
+
+    Saving walks the player's own lists and nothing else, allocates
+    only an Enumeration of the changed rooms when given a buffer, and
+    takes well under a microsecond for the stock map, so a server can
+    checkpoint every session after every command.  maxSize(session) is
+    how big that buffer must be for the game as it stands.
+*/
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.List;
+
+public class SaveGame {
+    static final int MAGIC = 0x484D5300;	// "HMS\0"
+    static final int VERSION = 1;
+    static final int VERBOSE = 1;		// Flag bits.
+
+    // Return the most bytes a game in this world can ever take: every
+    // room may have a list of its own, even an empty one.
+    public static int maxSize( WorldTemplate world ) {
+        int rooms = world.getNumLocations();
+        return size( rooms, (rooms+63)/64, rooms, world.getNumItems() );
+    }
+    // Return the most bytes this game takes as it stands.
+    public static int maxSize( GameSession session ) {
+        CreateWorld player = session.getPlayer();
+        WorldTemplate world = player.getWorld();
+        Hashtable changed = player.getChangedItems();
+        return size( world.getNumLocations(), player.getVisited().length,
+                     1+(changed==null ? 0 : changed.size()), world.getNumItems() );
+    }
+    // Header, room and "been here" bits, then a room and a count for each
+    // list and every item in one list or another, 5 bytes per varint.
+    private static int size( int rooms, int visitedLongs, int holders, int items ) {
+        return 4+3*5+1+5+5+visitedLongs*8+5+holders*2*5+items*5;
+    }
+
+    // Save a game into buf, from its position on.
+    public static void write( GameSession session, ByteBuffer buf ) {
+        CreateWorld player = session.getPlayer();
+        WorldTemplate world = player.getWorld();
+        buf.putInt( MAGIC|VERSION );
+        putVarint( buf, world.getNumLocations() );
+        putVarint( buf, world.getNumItems() );
+        buf.put( (byte)(session.isVerbose() ? VERBOSE : 0) );
+        putVarint( buf, player.getLocation().getIndex() );
+
+        long[] visited = player.getVisited();
+        int bytes = visited.length*8;
+        while ( bytes>0 && (visited[(bytes-1)>>3]>>>(((bytes-1)&7)*8) & 0xFF)==0 ) bytes--;
+        putVarint( buf, bytes );
+        for ( int i=0; i<bytes; i++ ) buf.put( (byte)(visited[i>>3]>>>((i&7)*8)) );
+
+        Hashtable changed = player.getChangedItems();
+        putVarint( buf, 1+(changed==null ? 0 : changed.size()) );
+        putItems( buf, 0, player.getItems() );
+        if ( changed!=null ) {
+            for ( Enumeration e = changed.keys(); e.hasMoreElements(); ) {
+                Integer room = (Integer)e.nextElement();
+                putItems( buf, room.intValue(), ((Inventory)changed.get(room)).getItems() );
+            }
+        }
+    }
+
+    private static void putItems( ByteBuffer buf, int room, List items ) {
+        putVarint( buf, room );
+        putVarint( buf, items.size() );
+        for ( int i=0; i<items.size(); i++ ) putVarint( buf, ((Item)items.get(i)).getIndex() );
+    }
+
+    // Return a game saved as a new array.
+    public static byte[] save( GameSession session ) {
+        ByteBuffer buf = ByteBuffer.allocate( maxSize(session) );
+        write( session, buf );
+        byte[] saved = new byte[ buf.position() ];
+        buf.flip();
+        buf.get( saved );
+        return saved;
+    }
+
+    // Restore a game saved by write() into session.  Nothing is changed
+    // unless the whole thing reads back.
+    public static void read( GameSession session, ByteBuffer buf ) throws IOException {
+        CreateWorld player = session.getPlayer();
+        WorldTemplate world = player.getWorld();
+        try {
+            int magic = buf.getInt();
+            if ( (magic&~0xFF)!=MAGIC ) throw new IOException( "Not a saved game" );
+            if ( (magic&0xFF)!=VERSION ) throw new IOException( "Saved game version "+(magic&0xFF)+" isn't supported" );
+            int rooms = getVarint( buf );
+            int items = getVarint( buf );
+            if ( rooms!=world.getNumLocations() || items!=world.getNumItems() ) {
+                throw new IOException( "Saved game is for a different map" );
+            }
+            boolean verbose = (buf.get()&VERBOSE)!=0;
+            int room = getVarint( buf );
+            if ( room<1 || room>=rooms ) throw new IOException( "Bad room "+room+" in saved game" );
+
+            long[] visited = new long[ player.getVisited().length ];
+            int bytes = getVarint( buf );
+            if ( bytes>visited.length*8 ) throw new IOException( "Too many rooms visited in saved game" );
+            for ( int i=0; i<bytes; i++ ) visited[i>>3] |= (buf.get()&0xFFL)<<((i&7)*8);
+
+            Inventory inventory = null;
+            Hashtable changed = null;
+            long[] seen = new long[ (items+63)/64 ];	// Items placed so far.
+            int holders = getVarint( buf );
+            for ( int h=0; h<holders; h++ ) {
+                int at = getVarint( buf );
+                if ( at<0 || at>=rooms ) throw new IOException( "Bad room "+at+" in saved game" );
+                Inventory list = new Inventory();
+                int count = getVarint( buf );
+                for ( int i=0; i<count; i++ ) {
+                    int item = getVarint( buf );
+                    if ( item<0 || item>=items || (seen[item>>6] & (1L<<item))!=0 ) {
+                        throw new IOException( "Bad item "+item+" in saved game" );
+                    }
+                    seen[item>>6] |= 1L<<item;
+                    list.addItem( world.getItem(item) );
+                }
+                // Each holder once: a second list would throw the first's items away.
+                if ( at==0 ) {
+                    if ( inventory!=null ) throw new IOException( "Two inventories in saved game" );
+                    inventory = list;
+                } else {
+                    if ( changed==null ) changed = new Hashtable();
+                    if ( changed.put(Integer.valueOf(at), list)!=null ) {
+                        throw new IOException( "Room "+at+" is listed twice in saved game" );
+                    }
+                }
+            }
+            if ( inventory==null ) throw new IOException( "No inventory in saved game" );
+
+            player.restore( world.getLocation(room), visited, inventory, changed );
+            session.setVerbose( verbose );
+        } catch (BufferUnderflowException e) {
+            throw new IOException( "Saved game is cut short" );
+        }
+    }
+
+    // Restore a game saved by save().
+    public static void restore( GameSession session, byte[] saved ) throws IOException {
+        read( session, ByteBuffer.wrap(saved) );
+    }
+
+    static void putVarint( ByteBuffer buf, int value ) {
+        while ( (value&~0x7F)!=0 ) {
+            buf.put( (byte)(value&0x7F|0x80) );
+            value >>>= 7;
+        }
+        buf.put( (byte)value );
+    }
+    static int getVarint( ByteBuffer buf ) throws IOException {
+        int value = 0;
+        for ( int shift=0; shift<35; shift+=7 ) {
+            byte b = buf.get();
+            value |= (b&0x7F)<<shift;
+            if ( b>=0 ) return value;
+        }
+        throw new IOException( "Bad number in saved game" );
+    }
+}
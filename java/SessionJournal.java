@@ -0,0 +1,606 @@
+/*
+    Keeps every game safe on disk, so a crash or restart doesn't lose
+    anybody's progress.  Each command a player types is appended to a
+    journal; every so often the state of every game is written out as a
+    snapshot (with SaveGame) and the journal before it is thrown away.
+    Starting a SessionJournal on a directory recovers what was there: the
+    games in the latest snapshot, brought up to date by replaying the
+    journal after it, the games replayed side by side on all processors.
+
+    Writing a command costs copying it into a buffer.  A flusher thread
+    writes whatever has piled up in one go and, when asked to, forces it
+    to the disk once for the whole lot (group commit), so a busy server
+    pays for one fsync per batch instead of one per command.  A caller
+    that must know a command is on disk can awaitDurable() it.
+
+    Files in the directory:
+
+        snapshot.dat   "HMK1", generation, next player id, players, then
+                       for each: id, commands so far, SaveGame bytes, and
+                       its named saved games.  Written to snapshot.tmp and
+                       renamed over the old one, so it is never half there.
+        journal.N      "HMJ1", N, then records: length, CRC32, player id,
+                       player's command number, type (OPEN, COMMAND,
+                       CLOSE), command text.  A torn or damaged record
+                       ends the file.
+
+    A snapshot says which journal generation follows it; older journal
+    files are deleted once it, and its rename, are on the disk.  Commands
+    made while the snapshot was being taken are in both, and replay skips
+    any command a game had already had when its state was saved.
+
+    Commands must go through play() (or run while synchronized on the
+    Player) so a snapshot never sees a game halfway through a command.
+    The games must be deterministic, which GameEngine is.
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class SessionJournal {
+    static final int JOURNAL_MAGIC = 0x484D4A31;	// "HMJ1"
+    static final int SNAPSHOT_MAGIC = 0x484D4B31;	// "HMK1"
+    static final String SNAPSHOT = "snapshot.dat";
+    static final String JOURNAL = "journal.";
+    static final byte OPEN = 1;
+    static final byte COMMAND = 2;
+    static final byte CLOSE = 3;
+    static final int HEADER = 4+4+4+4+1;		// Length, CRC, id, number, type.
+    static final int BUFFER = 64*1024;
+    static final int MAX_PENDING = 4*1024*1024;	// Commands wait for the flusher past this.
+    static final long SNAPSHOT_MILLIS = 60*1000;
+
+    // A game being journaled.
+    public static class Player {
+        int		id;
+        GameSession	session;
+        int		commands;	// Commands journaled (or replayed) so far.
+        int		saved;		// Commands in the snapshot it was recovered from.
+        Vector		replay;		// Commands to replay on recovery.
+
+        Player( int id, GameSession session ) {
+            this.id = id;
+            this.session = session;
+        }
+        public int getId() {
+            return id;
+        }
+        public GameSession getSession() {
+            return session;
+        }
+    }
+
+    private File		dir;
+    private WorldTemplate	world;
+    private GameEngine		engine;
+    private boolean		force;		// fsync each batch?
+    private Hashtable		players = new Hashtable();	// Integer id -> Player.
+    private int			nextId = 1;
+
+    // Guarded by this: the records waiting to be written.
+    private ByteBuffer		pending = ByteBuffer.allocate( BUFFER );
+    private CRC32		crc = new CRC32();
+    private long		appended = 0;	// Records appended,
+    private long		durable = 0;	// and how many of them are written.
+    private volatile IOException	failure;	// Why writing stopped, if it has.
+    private volatile boolean	closed = false;
+
+    // Guarded by channelLock: the journal file.
+    private Object		channelLock = new Object();
+    private ByteBuffer		writing = ByteBuffer.allocate( BUFFER );
+    private int			generation;
+    private FileChannel		channel;
+
+    private Object		snapshotLock = new Object();
+    private Thread		flusher, snapshotter;
+
+    // Open the journal in dir, recovering any games in it.  With force,
+    // each batch of commands is forced to the disk before it counts as
+    // durable; without, it is only handed to the operating system (which
+    // survives the JVM dying, but not the machine).
+    public SessionJournal( File dir, WorldTemplate world, GameEngine engine, boolean force )
+        throws IOException
+    {
+        this( dir, world, engine, force, SNAPSHOT_MILLIS );
+    }
+    public SessionJournal( File dir, WorldTemplate world, GameEngine engine, boolean force,
+                           final long snapshotMillis ) throws IOException
+    {
+        this.dir = dir;
+        this.world = world;
+        this.engine = engine;
+        this.force = force;
+        dir.mkdirs();
+        generation = recover()+1;
+        channel = openJournal( generation );
+
+        flusher = new Thread( "SessionJournal flusher" ) {
+            public void run() {
+                flushLoop();
+            }
+        };
+        flusher.setDaemon( true );
+        flusher.start();
+        if ( snapshotMillis>0 ) {
+            snapshotter = new Thread( "SessionJournal snapshots" ) {
+                public void run() {
+                    while ( !closed ) {
+                        try {
+                            Thread.sleep( snapshotMillis );
+                            if ( !closed ) snapshot();
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (IOException e) {
+                            Log.error( "Unable to write snapshot: "+e );
+                        } catch (RuntimeException e) {
+                            // A bad game mustn't stop the snapshots for good.
+                            Log.error( "Unable to write snapshot: "+e );
+                        }
+                    }
+                }
+            };
+            snapshotter.setDaemon( true );
+            snapshotter.start();
+        }
+    }
+
+    // Start a new game.
+    public Player open() {
+        checkFailure();		// Before there's a game to forget.
+        Player player;
+        synchronized ( this ) {
+            player = new Player( nextId++, new GameSession(new CreateWorld(world)) );
+            players.put( Integer.valueOf(player.id), player );
+        }
+        synchronized ( player ) {
+            append( player, OPEN, null );
+        }
+        return player;
+    }
+    // A game is over: forget it.
+    public void close( Player player ) {
+        synchronized ( this ) {		// First, so no later snapshot has it.
+            players.remove( Integer.valueOf(player.id) );
+        }
+        synchronized ( player ) {
+            append( player, CLOSE, null );
+        }
+    }
+
+    // Run a command in a player's game and journal it.  Return its record
+    // number, for awaitDurable().  Once the journal can't be written this
+    // (and open() and close(Player)) throws UncheckedIOException, and the
+    // command isn't run.
+    public long play( Player player, String line, StringBuffer out ) {
+        synchronized ( player ) {
+            checkFailure();		// Before the game moves on.
+            engine.textEntered( player.session, line, out );
+            return append( player, COMMAND, line );
+        }
+    }
+
+    // Return a game by id, or null.
+    public synchronized Player getPlayer( int id ) {
+        return (Player)players.get( Integer.valueOf(id) );
+    }
+    // Return all the games, in no particular order.
+    public synchronized Vector getPlayers() {
+        return new Vector( players.values() );
+    }
+
+    // Add a record to the pending batch.  The caller holds the player's lock.
+    private long append( Player player, byte type, String line ) {
+        checkFailure();
+        synchronized ( this ) {
+            while ( pending.position()>MAX_PENDING && failure==null && !closed ) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            checkFailure();
+            if ( type==COMMAND ) player.commands++;
+            int length = line==null ? 0 : line.length();
+            if ( pending.remaining()<HEADER+length*3 ) {
+                ByteBuffer bigger = ByteBuffer.allocate( Math.max(pending.capacity()*2, pending.position()+HEADER+length*3) );
+                pending.flip();
+                bigger.put( pending );
+                pending = bigger;
+            }
+            boolean wasEmpty = pending.position()==0;
+            int start = pending.position();
+            pending.position( start+8 );
+            pending.putInt( player.id );
+            pending.putInt( player.commands );
+            pending.put( type );
+            for ( int i=0; i<length; i++ ) {	// UTF-8, a char at a time.
+                char c = line.charAt( i );
+                if ( c<0x80 ) {
+                    pending.put( (byte)c );
+                } else if ( c<0x800 ) {
+                    pending.put( (byte)(0xC0|c>>6) ).put( (byte)(0x80|c&0x3F) );
+                } else {
+                    pending.put( (byte)(0xE0|c>>12) ).put( (byte)(0x80|c>>6&0x3F) ).put( (byte)(0x80|c&0x3F) );
+                }
+            }
+            int end = pending.position();
+            crc.reset();
+            crc.update( pending.array(), start+8, end-start-8 );
+            pending.putInt( start, end-start-8 );
+            pending.putInt( start+4, (int)crc.getValue() );
+            appended++;
+            if ( wasEmpty ) notifyAll();	// Wake the flusher.
+            return appended;
+        }
+    }
+
+    // Throw if the journal can no longer be written, so no game goes on
+    // without its commands being kept.
+    private void checkFailure() {
+        if ( failure!=null ) throw new UncheckedIOException( "Session journal stopped writing", failure );
+    }
+
+    // Wait until record (from play()) is written (and forced, if forcing).
+    public synchronized void awaitDurable( long record ) throws IOException {
+        while ( durable<record && failure==null && !closed ) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+        if ( failure!=null ) throw failure;
+    }
+
+    private void flushLoop() {
+        while ( !closed ) {
+            synchronized ( this ) {
+                while ( pending.position()==0 && !closed ) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                Log.error( "Unable to write session journal: "+e );
+                synchronized ( this ) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    // Write everything appended so far.
+    private void flush() throws IOException {
+        synchronized ( channelLock ) {
+            if ( closed ) return;
+            long batch;
+            synchronized ( this ) {
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                batch = appended;
+                notifyAll();		// Anyone waiting for room.
+            }
+            writing.flip();
+            while ( writing.hasRemaining() ) channel.write( writing );
+            if ( force ) channel.force( false );
+            writing.clear();
+            synchronized ( this ) {
+                if ( batch>durable ) durable = batch;
+                notifyAll();
+            }
+        }
+    }
+
+    private FileChannel openJournal( int number ) throws IOException {
+        FileChannel file = new FileOutputStream( new File(dir, JOURNAL+number) ).getChannel();
+        ByteBuffer header = ByteBuffer.allocate( 8 );
+        header.putInt( JOURNAL_MAGIC ).putInt( number ).flip();
+        while ( header.hasRemaining() ) file.write( header );
+        if ( force ) file.force( true );
+        return file;
+    }
+
+    // Write every game's state to the snapshot, start a new journal file
+    // and delete the old ones.
+    public void snapshot() throws IOException {
+        synchronized ( snapshotLock ) {
+            int after;
+            synchronized ( channelLock ) {
+                flush();
+                channel.close();
+                after = ++generation;
+                channel = openJournal( after );
+            }
+            Vector all;
+            int next;
+            synchronized ( this ) {
+                all = new Vector( players.values() );
+                next = nextId;
+            }
+
+            File temp = new File( dir, "snapshot.tmp" );
+            FileOutputStream file = new FileOutputStream( temp );
+            boolean written = false;
+            try {
+                DataOutputStream out = new DataOutputStream( new BufferedOutputStream(file, BUFFER) );
+                out.writeInt( SNAPSHOT_MAGIC );
+                out.writeInt( after );
+                out.writeInt( next );
+                out.writeInt( all.size() );
+                ByteBuffer buf = null;	// Grown to fit the biggest game.
+                for ( int i=0; i<all.size(); i++ ) {
+                    Player player = (Player)all.elementAt( i );
+                    synchronized ( player ) {
+                        int size = SaveGame.maxSize( player.session );
+                        if ( buf==null || buf.capacity()<size ) buf = ByteBuffer.allocate( size );
+                        buf.clear();
+                        SaveGame.write( player.session, buf );
+                        out.writeInt( player.id );
+                        out.writeInt( player.commands );
+                        out.writeInt( buf.position() );
+                        out.write( buf.array(), 0, buf.position() );
+                        Vector names = new Vector();
+                        for ( Enumeration e = player.session.getSavedNames(); e.hasMoreElements(); ) {
+                            names.add( e.nextElement() );
+                        }
+                        out.writeShort( names.size() );
+                        for ( int j=0; j<names.size(); j++ ) {
+                            String name = (String)names.elementAt( j );
+                            byte[] game = player.session.getSaved( name );
+                            out.writeUTF( name );
+                            out.writeInt( game.length );
+                            out.write( game );
+                        }
+                    }
+                }
+                out.flush();
+                if ( force ) file.getFD().sync();
+                written = true;
+            } finally {
+                file.close();
+                if ( !written ) temp.delete();	// Don't leave half a snapshot about.
+            }
+            File snapshot = new File( dir, SNAPSHOT );
+            if ( !temp.renameTo(snapshot) ) {
+                snapshot.delete();	// Some systems won't rename over a file.
+                if ( !temp.renameTo(snapshot) ) throw new IOException( "Unable to rename "+temp+" to "+snapshot );
+            }
+            // The old journals are the only copy until the rename is on the
+            // disk, so sync the directory before deleting them.
+            syncDirectory();
+
+            int[] numbers = journalNumbers();
+            for ( int i=0; i<numbers.length; i++ ) {
+                if ( numbers[i]<after ) new File( dir, JOURNAL+numbers[i] ).delete();
+            }
+        }
+    }
+
+    // Force the directory's entries (renames, new files) to the disk.  Some
+    // systems can't open a directory; there the rename is as good as it gets.
+    private void syncDirectory() throws IOException {
+        FileChannel entries;
+        try {
+            entries = FileChannel.open( dir.toPath(), StandardOpenOption.READ );
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            entries.force( true );
+        } finally {
+            entries.close();
+        }
+    }
+
+    // Write what is pending, stop the threads and close the journal.  The
+    // games are all still recoverable from the directory.
+    public void close() throws IOException {
+        synchronized ( snapshotLock ) {
+            synchronized ( channelLock ) {
+                flush();
+                synchronized ( this ) {
+                    closed = true;
+                    notifyAll();
+                }
+                channel.close();
+            }
+        }
+        if ( snapshotter!=null ) snapshotter.interrupt();
+    }
+
+    // Return the numbers of the journal files in the directory, in order.
+    private int[] journalNumbers() {
+        String[] names = dir.list();
+        Vector numbers = new Vector();
+        for ( int i=0; names!=null && i<names.length; i++ ) {
+            if ( !names[i].startsWith(JOURNAL) ) continue;
+            try {
+                Integer number = Integer.valueOf( names[i].substring(JOURNAL.length()) );
+                int at = 0;
+                while ( at<numbers.size() && ((Integer)numbers.elementAt(at)).intValue()<number.intValue() ) at++;
+                numbers.insertElementAt( number, at );
+            } catch (NumberFormatException e) {
+                // Not one of ours.
+            }
+        }
+        int[] sorted = new int[ numbers.size() ];
+        for ( int i=0; i<sorted.length; i++ ) sorted[i] = ((Integer)numbers.elementAt( i )).intValue();
+        return sorted;
+    }
+
+    // Load the snapshot and the journal after it, replay, and return the
+    // highest journal number seen.
+    private int recover() throws IOException {
+        long start = System.nanoTime();
+        int after = 0;
+        File snapshot = new File( dir, SNAPSHOT );
+        if ( snapshot.exists() ) after = readSnapshot( snapshot );
+
+        int[] numbers = journalNumbers();
+        int last = after;
+        int records = 0;
+        for ( int i=0; i<numbers.length; i++ ) {
+            last = Math.max( last, numbers[i] );
+            if ( numbers[i]>=after ) records += readJournal( new File(dir, JOURNAL+numbers[i]) );
+        }
+        int replayed = replay();
+        if ( !players.isEmpty() || records>0 ) {
+            Log.info( "Recovered "+players.size()+" games ("+replayed+" commands replayed) in "
+                      +(System.nanoTime()-start)/1000000+"ms." );
+        }
+        return last;
+    }
+
+    private int readSnapshot( File file ) throws IOException {
+        DataInputStream in = new DataInputStream( new BufferedInputStream(new FileInputStream(file), BUFFER) );
+        try {
+            if ( in.readInt()!=SNAPSHOT_MAGIC ) throw new IOException( file+" is not a snapshot" );
+            int after = in.readInt();
+            nextId = in.readInt();
+            int count = in.readInt();
+            for ( int i=0; i<count; i++ ) {
+                Player player = new Player( in.readInt(), new GameSession(new CreateWorld(world)) );
+                player.commands = player.saved = in.readInt();
+                byte[] game = new byte[ in.readInt() ];
+                in.readFully( game );
+                SaveGame.restore( player.session, game );
+                int names = in.readUnsignedShort();
+                for ( int j=0; j<names; j++ ) {
+                    String name = in.readUTF();
+                    byte[] saved = new byte[ in.readInt() ];
+                    in.readFully( saved );
+                    player.session.putSaved( name, saved );
+                }
+                players.put( Integer.valueOf(player.id), player );
+            }
+            return after;
+        } finally {
+            in.close();
+        }
+    }
+
+    // Sort a journal file's commands out by player.  Return the number of records.
+    private int readJournal( File file ) throws IOException {
+        FileInputStream stream = new FileInputStream( file );
+        ByteBuffer buf;
+        try {
+            FileChannel in = stream.getChannel();
+            buf = in.map( FileChannel.MapMode.READ_ONLY, 0, in.size() );
+        } finally {
+            stream.close();
+        }
+        if ( buf.remaining()<8 || buf.getInt()!=JOURNAL_MAGIC ) {
+            Log.warning( file+" is not a session journal, skipping it." );
+            return 0;
+        }
+        buf.getInt();
+        int records = 0;
+        byte[] record = new byte[ 256 ];
+        char[] text = new char[ 256 ];
+        CRC32 check = new CRC32();
+        while ( buf.remaining()>=HEADER ) {
+            int length = buf.getInt();
+            int sum = buf.getInt();
+            if ( length<HEADER-8 || length>buf.remaining() ) break;		// Torn write.
+            if ( length>record.length ) record = new byte[ length ];
+            buf.get( record, 0, length );
+            check.reset();
+            check.update( record, 0, length );
+            if ( (int)check.getValue()!=sum ) break;				// Damaged.
+            records++;
+
+            ByteBuffer r = ByteBuffer.wrap( record, 0, length );
+            int id = r.getInt();
+            int number = r.getInt();
+            byte type = r.get();
+            Integer key = Integer.valueOf( id );
+            Player player = (Player)players.get( key );
+            if ( type==OPEN ) {
+                if ( player==null ) {
+                    players.put( key, new Player(id, new GameSession(new CreateWorld(world))) );
+                }
+                if ( id>=nextId ) nextId = id+1;
+            } else if ( type==CLOSE ) {
+                players.remove( key );
+            } else if ( type==COMMAND && player!=null && number>player.saved ) {
+                int chars = 0;
+                if ( text.length<length ) text = new char[ length ];
+                while ( r.hasRemaining() ) {
+                    int b = r.get()&0xFF;
+                    if ( b<0x80 ) {
+                        text[chars++] = (char)b;
+                    } else if ( b<0xE0 ) {
+                        text[chars++] = (char)( (b&0x1F)<<6 | r.get()&0x3F );
+                    } else {
+                        text[chars++] = (char)( (b&0x0F)<<12 | (r.get()&0x3F)<<6 | r.get()&0x3F );
+                    }
+                }
+                if ( player.replay==null ) player.replay = new Vector();
+                player.replay.add( new String(text, 0, chars) );
+                player.commands = number;
+            }
+        }
+        if ( buf.hasRemaining() ) Log.warning( "Ignoring "+buf.remaining()+" damaged bytes at the end of "+file+"." );
+        return records;
+    }
+
+    // Replay the journaled commands of every game, the games in parallel.
+    // Return how many commands were replayed.
+    private int replay() throws IOException {
+        Vector todo = new Vector();
+        int commands = 0;
+        for ( Enumeration e = players.elements(); e.hasMoreElements(); ) {
+            Player player = (Player)e.nextElement();
+            if ( player.replay!=null ) {
+                todo.add( player );
+                commands += player.replay.size();
+            }
+        }
+        if ( todo.isEmpty() ) return 0;
+        int threads = Math.min( Runtime.getRuntime().availableProcessors(), todo.size() );
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        for ( int i=0; i<threads; i++ ) {
+            final Vector games = todo;
+            final int first = i, step = threads;
+            pool.execute( new Runnable() {
+                public void run() {
+                    StringBuffer out = new StringBuffer( 4096 );
+                    for ( int g=first; g<games.size(); g+=step ) {
+                        Player player = (Player)games.elementAt( g );
+                        for ( int c=0; c<player.replay.size(); c++ ) {
+                            out.setLength( 0 );
+                            engine.textEntered( player.session, (String)player.replay.elementAt(c), out );
+                        }
+                        player.replay = null;
+                    }
+                }
+            } );
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination( Long.MAX_VALUE, TimeUnit.SECONDS );
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException( "Interrupted replaying the session journal" );
+        }
+        return commands;
+    }
+}
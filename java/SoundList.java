@@ -1,23 +1,133 @@
 /*
 * Code is the same in both 1.0 and 1.1.
+*
+* Holds the audio clips that have been loaded, up to a budget of bytes.
+* When a new clip takes it over budget the least recently used clips are
+* dropped (they get loaded again if they're wanted again), except the one
+* that is playing, which is pinned.  A clip's size is what the loader says
+* it is (the length of its file), since an AudioClip won't tell us.
+*
+* getClip() is called on every move and doesn't lock anything; only
+* adding clips (from the loader threads) does.
  */
 
 import java.applet.*;
-import java.net.URL;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 //Loads and holds a bunch of audio files whose locations are specified
 //relative to a fixed base URL.
-class SoundList extends java.util.Hashtable {
+class SoundList {
+    static final long DEFAULT_BUDGET = 8*1024*1024;	// Bytes of clips to keep.
+
+    private ConcurrentHashMap	clips = new ConcurrentHashMap();	// Name -> Entry.
+    private long		budget;
+    private long		bytes = 0;		// Total size of what we hold.
+    private volatile String	pinned;			// Clip that mustn't be dropped.
+    private AtomicLong		clock = new AtomicLong();	// Ticks on every use, for LRU.
+    private AtomicLong		hits = new AtomicLong();
+    private AtomicLong		misses = new AtomicLong();
+    private AtomicLong		evictions = new AtomicLong();
+
+    // One clip and what we know about it.
+    private static class Entry {
+        AudioClip	clip;
+        long		size;
+        volatile long	lastUsed;
+
+        Entry( AudioClip clip, long size, long now ) {
+            this.clip = clip;
+            this.size = size;
+            lastUsed = now;
+        }
+    }
 
     public SoundList() {
-        super(5); //Initialize Hashtable with capacity of 5 entries.
+        this( DEFAULT_BUDGET );
+    }
+    // Keep at most budget bytes of clips (plus whatever is pinned).
+    public SoundList( long budget ) {
+        this.budget = budget;
     }
 
+    // Return a clip if we have it, or null.
     public AudioClip getClip(String relativeURL) {
-        return (AudioClip)get(relativeURL);
+        Entry entry = (Entry)clips.get( relativeURL );
+        if ( entry==null ) {
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.lastUsed = clock.incrementAndGet();
+        hits.incrementAndGet();
+        return entry.clip;
+    }
+    // Is a clip here?  (Doesn't count as a use.)
+    public boolean hasClip( String relativeURL ) {
+        return clips.containsKey( relativeURL );
     }
 
+    // Add a clip of unknown size.
     public void putClip(AudioClip clip, String relativeURL) {
-        put(relativeURL, clip);
+        putClip( clip, relativeURL, 0 );
+    }
+    // Add a clip that takes up size bytes, dropping old clips if need be.
+    public synchronized void putClip( AudioClip clip, String relativeURL, long size ) {
+        Entry old = (Entry)clips.put( relativeURL, new Entry(clip, size, clock.incrementAndGet()) );
+        if ( old!=null ) bytes -= old.size;
+        bytes += size;
+        while ( bytes>budget && evictOne(relativeURL) ) {}
+    }
+
+    // Drop the least recently used clip (never the pinned one or keep).
+    // Return false if there was nothing that could go.
+    private boolean evictOne( String keep ) {
+        String oldest = null;
+        long oldestUse = Long.MAX_VALUE;
+        for ( Iterator i = clips.entrySet().iterator(); i.hasNext(); ) {
+            java.util.Map.Entry e = (java.util.Map.Entry)i.next();
+            String name = (String)e.getKey();
+            long used = ((Entry)e.getValue()).lastUsed;
+            if ( used<oldestUse && !name.equals(keep) && !name.equals(pinned) ) {
+                oldest = name;
+                oldestUse = used;
+            }
+        }
+        if ( oldest==null ) return false;
+        Entry entry = (Entry)clips.remove( oldest );
+        bytes -= entry.size;
+        evictions.incrementAndGet();
+        if ( Log.debugging() ) Log.debug( "Dropped sound file '"+oldest+"' from the cache." );
+        return true;
+    }
+
+    // Keep this clip no matter what (null to pin nothing).  Only one clip
+    // is pinned at a time: the one playing.
+    public void pin( String relativeURL ) {
+        pinned = relativeURL;
+    }
+
+    // Counters and sizes, for keeping an eye on the cache.
+    public int size() {
+        return clips.size();
+    }
+    public synchronized long getBytes() {
+        return bytes;
+    }
+    public long getBudget() {
+        return budget;
+    }
+    public long getHits() {
+        return hits.get();
+    }
+    public long getMisses() {
+        return misses.get();
+    }
+    public long getEvictions() {
+        return evictions.get();
+    }
+    public String toString() {
+        return "SoundList["+size()+" clips, "+getBytes()+"/"+budget+" bytes, "
+            +getHits()+" hits, "+getMisses()+" misses, "+getEvictions()+" evictions]";
     }
 }
@@ -1,55 +1,251 @@
+/*
+    Loads sound clips in the background.  This used to be a new Thread for
+    every clip that wasn't in the SoundList yet, so running from zone to
+    zone could have several loaders going at once, all poking at the
+    SoundPlayer's fields.  Now there is one small pool of low priority
+    threads per SoundLoader with a bounded queue, and:
+
+    - Asking for a clip that is already being loaded (or waiting to be)
+      doesn't start another load; the caller is just added to the list of
+      listeners told when it is done.
+    - cancel() drops a load that hasn't started yet, for when the player
+      has already moved on.  Loads that are under way are left to finish
+      (the clip still goes in the SoundList for next time).
+    - If the queue is full, the oldest waiting load is dropped to make
+      room for the new one, and its listeners are told it didn't load.
+
+    Clips come from the applet (getAudioClip(), which loads the whole
+    sound) or, when streaming, are StreamClips, which only read the start
+    of the sound up front and stream the rest as it plays.
+
+    Listeners are called on a loader thread, except that those of a load
+    dropped from a full queue are called on the thread whose load pushed
+    it out.
+*/
+
 import java.applet.*;
-import java.net.URL;
-
-class SoundLoader extends Thread {
-    Applet	applet;
-    SoundList	soundList;
-    URL		baseURL;
-    String	relativeURL;
-    SoundPlayer	soundPlayer;
-    
-    public SoundLoader( Applet applet, SoundList soundList, URL baseURL, String relativeURL,
-                        SoundPlayer soundPlayer ) {
+import java.io.IOException;
+import java.net.*;
+import java.util.Vector;
+import java.util.concurrent.*;
+
+class SoundLoader {
+    static final int THREADS = 2;	// Loads going at once.
+    static final int QUEUE = 8;		// Loads allowed to wait.
+    static final long DEFAULT_SIZE = 256*1024;	// Guess for clips of unknown size.
+
+    // Told when a clip has loaded (clip is null if it couldn't be).
+    interface Listener {
+        public void soundLoaded( String soundFile, AudioClip clip );
+    }
+
+    Applet		applet;		// Null when streaming without an applet.
+    SoundList		soundList;
+    URL			baseURL;
+    boolean		streaming;	// StreamClips rather than the applet's AudioClips.
+    private ConcurrentHashMap	pending = new ConcurrentHashMap();	// Sound file -> Request.
+    private ThreadPoolExecutor	executor;
+
+    // Load clips through an applet (or, if applet is null, as StreamClips).
+    public SoundLoader( Applet applet, SoundList soundList, URL baseURL ) {
+        this( applet, soundList, baseURL, applet==null );
+    }
+    public SoundLoader( Applet applet, SoundList soundList, URL baseURL, boolean streaming ) {
         this.applet = applet;
+        this.streaming = streaming || applet==null;
         this.soundList = soundList;
         this.baseURL = baseURL;
-        this.relativeURL = relativeURL;
-        this.soundPlayer = soundPlayer;
-        setPriority(MIN_PRIORITY);
-        start();
-    }
-
-    public void run() {
-        System.out.println( "Attempting to BACKGROUND load sound file '"+relativeURL+"'." );
-
-        AudioClip audioClip = applet.getAudioClip(baseURL, relativeURL);
-        
-        if ( audioClip!=null ) { // If it loaded...
-            soundList.putClip(audioClip, relativeURL); // Add clip to hash table.
-            // snooze(5000);
-            System.out.println( "Sound file '"+relativeURL+"' loaded." );
-            // Hack?  Or legal?
-            // Potential bug here.  Sound could take so long to load that user could enter another
-            // zone and load that sound and have it start playing first, then the longer one would
-            // complete and start playing.  A check should be done to see if this sound is still
-            // supposed to be played.
-            // Are we in the zone?
-            if ( soundPlayer.zone.equals(relativeURL) ) {
-                soundPlayer.stopLoop();
-                soundPlayer.loopClip = audioClip;		// This is our current clip.
-                soundPlayer.nowPlaying = relativeURL;	// And this is its name.
-                soundPlayer.loopClip.loop();
-                System.out.println( "Now playing sound file '"+soundPlayer.nowPlaying+"'." );
+        executor = new ThreadPoolExecutor( THREADS, THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue(QUEUE), new ThreadFactory() {
+                int count = 0;
+                public synchronized Thread newThread( Runnable r ) {
+                    Thread thread = new Thread( r, "SoundLoader-"+(++count) );
+                    thread.setDaemon( true );
+                    thread.setPriority( Thread.MIN_PRIORITY );
+                    return thread;
+                }
+            }, new RejectedExecutionHandler() {
+                // Full up: drop the oldest waiting load and try again.
+                public void rejectedExecution( Runnable r, ThreadPoolExecutor executor ) {
+                    if ( executor.isShutdown() ) {
+                        ((Request)r).cancel( false );
+                        return;
+                    }
+                    Request oldest = (Request)executor.getQueue().poll();
+                    if ( oldest!=null ) {
+                        Log.warning( "Too many sounds waiting, dropping '"+oldest.soundFile+"'." );
+                        oldest.drop();
+                    }
+                    executor.execute( r );
+                }
+            } );
+        executor.allowCoreThreadTimeOut( true );	// No threads while there's nothing to do.
+    }
+
+    // Start loading a clip (or join a load already on its way) and tell
+    // listener (which may be null) when it is done.
+    public Future load( String soundFile, Listener listener ) {
+        while (true) {
+            Request request = (Request)pending.get( soundFile );
+            if ( request==null ) {
+                Request created = new Request( new Load(soundFile) );
+                request = (Request)pending.putIfAbsent( soundFile, created );
+                if ( request==null ) {
+                    created.addListener( listener );
+                    executor.execute( created );
+                    return created;
+                }
             }
-        } else {
-            // If it did not load...
-            System.out.println( "Unable to load sound file '"+relativeURL+"'." );
+            if ( request.addListener(listener) ) return request;
+            // It finished as we got here; go round and start a new one.
+            pending.remove( soundFile, request );
         }
     }
 
-    private void snooze( int zzz ) {
+    // Load a clip nobody is waiting for yet, but only if there is room in
+    // the queue: a prefetch never pushes out another load.  Return null if
+    // it wasn't queued.
+    public Future prefetch( String soundFile ) {
+        Future request = (Future)pending.get( soundFile );
+        if ( request!=null ) return request;
+        if ( executor.getQueue().remainingCapacity()==0 ) return null;
+        return load( soundFile, null );
+    }
+
+    // Forget about a load if it hasn't started yet.  Return true if it was dropped.
+    public boolean cancel( String soundFile ) {
+        Request request = (Request)pending.get( soundFile );
+        if ( request==null || request.started ) return false;
+        if ( !request.cancel(false) ) return false;
+        if ( Log.debugging() ) Log.debug( "Cancelled loading sound file '"+soundFile+"'." );
+        return true;
+    }
+
+    // Actually load a clip (on a loader thread).
+    protected AudioClip loadClip( String soundFile ) {
+        if ( !streaming ) return applet.getAudioClip( baseURL, soundFile );
+        try {
+            return new StreamClip( new URL(baseURL, soundFile) );	// Only reads the start.
+        } catch (IOException e) {
+            Log.error( "Error -- "+e.toString() );
+            return null;
+        }
+    }
+
+    // Return about how much memory a loaded clip takes: the length of its
+    // file, or DEFAULT_SIZE if that can't be found out.
+    protected long clipSize( String soundFile ) {
         try {
-            Thread.sleep( zzz );
-        } catch( InterruptedException e ) {}
+            URLConnection connection = new URL( baseURL, soundFile ).openConnection();
+            long length = connection.getContentLengthLong();
+            try {
+                connection.getInputStream().close();
+            } catch (IOException e) {}
+            return length>0 ? length : DEFAULT_SIZE;
+        } catch (IOException e) {
+            return DEFAULT_SIZE;
+        }
+    }
+
+    // Return the number of clips being (or waiting to be) loaded.
+    public int getPending() {
+        return pending.size();
+    }
+    // Return the number of loads waiting for a thread.
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    // Stop the loader threads.  Loads waiting to start are dropped.
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // The loading itself: the clip, and how big it is.
+    private class Load implements Callable {
+        String		soundFile;
+        long		size = 0;			// Bytes, for the SoundList.
+
+        Load( String soundFile ) {
+            this.soundFile = soundFile;
+        }
+        public Object call() {
+            if ( Log.debugging() ) Log.debug( "Attempting to BACKGROUND load sound file '"+soundFile+"'." );
+            AudioClip clip = loadClip( soundFile );
+            if ( clip instanceof StreamClip ) {
+                size = ((StreamClip)clip).getMemory();	// The same however long it is.
+            } else if ( clip!=null ) {
+                size = clipSize( soundFile );
+            }
+            return clip;
+        }
+    }
+
+    // One clip to load, and who wants to know when it's there.
+    private class Request extends FutureTask {
+        String		soundFile;
+        volatile boolean	started = false;
+        private Load	load;
+        private Vector	listeners = new Vector( 2 );
+        private boolean	finished = false;
+        private volatile boolean	dropped = false;	// Pushed out of a full queue.
+
+        Request( Load load ) {
+            super( load );
+            this.load = load;
+            soundFile = load.soundFile;
+        }
+
+        // Add someone to tell.  Return false if it is too late for that.
+        synchronized boolean addListener( Listener listener ) {
+            if ( finished ) return false;
+            if ( listener!=null && !listeners.contains(listener) ) listeners.add( listener );
+            return true;
+        }
+
+        public void run() {
+            started = true;
+            super.run();
+        }
+
+        // Give up on a load that never started because the queue filled
+        // up.  Unlike cancel(), whoever was waiting for it is told (with
+        // a null clip), and it stops being pending at once so asking for
+        // the clip again starts a new load.
+        void drop() {
+            dropped = true;
+            pending.remove( soundFile, this );
+            cancel( false );
+        }
+
+        protected void done() {
+            AudioClip clip = null;
+            if ( !isCancelled() ) {
+                try {
+                    clip = (AudioClip)get();
+                } catch (Exception e) {
+                    Log.warning( "Error loading sound file '"+soundFile+"': "+e );
+                }
+                if ( clip!=null ) { // If it loaded...
+                    // Into the list before we stop being pending, so anyone
+                    // asking in between finds it one place or the other.
+                    soundList.putClip( clip, soundFile, load.size );
+                    if ( Log.debugging() ) Log.debug( "Sound file '"+soundFile+"' loaded." );
+                } else {
+                    // If it did not load...
+                    Log.warning( "Unable to load sound file '"+soundFile+"'." );
+                }
+            }
+            Vector tell;
+            synchronized (this) {
+                finished = true;
+                tell = listeners;
+            }
+            pending.remove( soundFile, this );
+            if ( isCancelled() && !dropped ) return;
+            for ( int i=0; i<tell.size(); i++ ) {
+                ((Listener)tell.elementAt(i)).soundLoaded( soundFile, clip );
+            }
+        }
     }
 }
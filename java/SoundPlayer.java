@@ -1,63 +1,147 @@
 /*
 * Code is the same in both 1.0 and 1.1.
+*
+* Loops the background sound for the zone the player is in.  Clips that
+* aren't loaded yet are handed to the SoundLoader, and started when they
+* arrive if the player is still in their zone.  loop() is called from the
+* GUI thread and soundLoaded() from a loader thread, so everything that
+* touches zone/nowPlaying/loopClip is synchronized on the player.
  */
 
 import java.applet.*;
 import java.net.URL;
 
-class SoundPlayer {
-    Applet 	applet;
-    SoundList 	soundList;
-    URL 	baseURL;
-    String 	relativeURL;
+class SoundPlayer implements SoundLoader.Listener {
+    private Applet 	applet;
+    private SoundList 	soundList;
+    private SoundLoader	loader;
+    private SoundPrefetcher	prefetcher;
+    private URL 	baseURL;
 
-    String	nowPlaying;	// Name of sound file currently playing.
-    AudioClip	loopClip;	// Clip that is currently playing.
-    String	zone;		// Audio clip zone we are in.
+    private String	nowPlaying;	// Name of sound file currently playing.
+    private AudioClip	loopClip;	// Clip that is currently playing.
+    private static final int UNKNOWN = -1;	// Zone before the first loop() or after stopLoop().
+    private int		zone = UNKNOWN;	// Audio zone ID we are in.
+    private String	zoneSound;	// What that zone plays.
 
+    // Play sounds from the applet's code base.  They are streamed unless
+    // the applet has a "streaming" parameter of "false".
     SoundPlayer(Applet applet) {
         this.applet = applet;
-        soundList = new SoundList();
+        soundList = new SoundList( cacheBudget(applet) );
         this.baseURL = applet.getCodeBase();
+        loader = new SoundLoader( applet, soundList, baseURL,
+                                  !"false".equalsIgnoreCase(parameter(applet, "streaming")) );
+        prefetcher = new SoundPrefetcher( loader, soundList );
+        GameMetrics.get().watch( soundList, loader );
+    }
+    // Stream sounds from baseURL, no applet needed.
+    SoundPlayer( URL baseURL ) {
+        this.baseURL = baseURL;
+        soundList = new SoundList();
+        loader = new SoundLoader( null, soundList, baseURL );
+        prefetcher = new SoundPrefetcher( loader, soundList );
+        GameMetrics.get().watch( soundList, loader );
+    }
+
+    // Return the sound cache size to use: the applet's "soundcache"
+    // parameter (in KB) if it has one.
+    private static long cacheBudget( Applet applet ) {
+        String param = parameter( applet, "soundcache" );
+        try {
+            if ( param!=null ) return Long.parseLong( param.trim() )*1024;
+        } catch (NumberFormatException e) {
+            Log.warning( "Bad soundcache parameter '"+param+"'." );
+        }
+        return SoundList.DEFAULT_BUDGET;
     }
-    
-    // Play the specified sound (looping). Load it if necessary.
-    public void loop( String soundFile ) {
-        zone = soundFile; // We are now in this audio zone.
+    // Return an applet parameter, or null (also if not running as an applet).
+    private static String parameter( Applet applet, String name ) {
+        try {
+            return applet.getParameter( name );
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    // Return the clip cache (for its counters).
+    public SoundList getSoundList() {
+        return soundList;
+    }
+
+    // The player is in a zone (by ID) that plays soundFile (null for none).
+    // Play its sound (looping), loading it if necessary.  This is called
+    // every time a room is shown, and staying in the same zone is just an
+    // int comparison.
+    public synchronized void loop( int newZone, String soundFile ) {
+        if ( newZone==zone ) return;	// Same zone, nothing to do.
+        // Leaving a zone whose sound never got going?  Don't bother loading it.
+        if ( zoneSound!=null && !zoneSound.equals(nowPlaying) && !zoneSound.equals(soundFile) ) {
+            loader.cancel( zoneSound );
+        }
+        zone = newZone; // We are now in this audio zone.
+        zoneSound = soundFile;
+        if ( soundFile==null ) return;	// Silent zone; carry on with what's playing.
         if ( soundFile.equals(nowPlaying) ) { // Already playing this?
-            System.out.println( "Alreadying playing sound file '"+soundFile+"'." );
+            if ( Log.debugging() ) Log.debug( "Alreadying playing sound file '"+soundFile+"'." );
             return;
         }
         // See if we already have this clip loaded.
-        System.out.println( "Checking to see if sound file '"+soundFile+"' has already been loaded." );
+        if ( Log.debugging() ) Log.debug( "Checking to see if sound file '"+soundFile+"' has already been loaded." );
         AudioClip audioClip = soundList.getClip( soundFile );
         if ( audioClip==null ) { // Not found, so we need to load it.
-            // Create a new background thread to do the loading.
-            new SoundLoader( applet, soundList, baseURL, soundFile, this );
+            // Have it loaded in the background; soundLoaded() is called when it's in.
+            loader.load( soundFile, this );
             return; 		// We outta here...
         } else {
-            System.out.println( "Sound file '"+soundFile+"' already loaded." );
+            if ( Log.debugging() ) Log.debug( "Sound file '"+soundFile+"' already loaded." );
         }
-        // If here, soundFile is the name of what we want to be playing,
-        // and audioClip is the handle to that audio clip.
-        stopLoop();
-        loopClip = audioClip;	// This is our current clip.
+        start( soundFile, audioClip );
+    }
+
+    // The player has moved to here: get the sounds of nearby zones loading.
+    public void prefetch( Location here ) {
+        prefetcher.moved( here );
+    }
+
+    // A clip we asked for has loaded.  Play it if we are still in its zone
+    // (by now the player may have gone somewhere else).
+    public synchronized void soundLoaded( String soundFile, AudioClip clip ) {
+        if ( clip!=null && soundFile.equals(zoneSound) && !soundFile.equals(nowPlaying) ) {
+            start( soundFile, clip );
+        }
+    }
+
+    // Switch to looping a different clip.
+    private void start( String soundFile, AudioClip clip ) {
+        halt();
+        loopClip = clip;	// This is our current clip.
         nowPlaying = soundFile;	// And this is its name.
         loopClip.loop();
-        System.out.println( "Now playing sound file '"+nowPlaying+"'." );
-        return;        
+        soundList.pin( soundFile );	// Don't let the cache drop what's playing.
+        Log.info( "Now playing sound file '"+nowPlaying+"'." );
     }
 
-    public void stopLoop() {
+    // Stop the sound.  The next loop() starts the zone's sound again, even
+    // if it is the same zone.
+    public synchronized void stopLoop() {
+        halt();
+        zone = UNKNOWN;
+        zoneSound = null;
+    }
+    private void halt() {
         if ( loopClip!=null ) {	// Do we have a currently playing sound?
-            System.out.println( "Halting current sound file '"+nowPlaying+"'." );
+            if ( Log.debugging() ) Log.debug( "Halting current sound file '"+nowPlaying+"'." );
             loopClip.stop();	// Yes.  Make it shhh!
-        }        
+            loopClip = null;
+            nowPlaying = null;	// So coming back to this zone starts it again.
+            soundList.pin( null );
+        }
     }
 
-    private void snooze( int time ) {
-        try {
-            Thread.sleep( time );
-        } catch( InterruptedException e) {}
+    // Stop playing and loading for good.
+    public synchronized void shutdown() {
+        stopLoop();
+        loader.shutdown();
     }
 }
@@ -0,0 +1,83 @@
+/*
+    Gets the sounds of nearby zones loaded before the player walks into
+    them, so a new zone doesn't start with a silent gap while its clip
+    downloads.  After each move, moved() walks the exits outwards from
+    where the player is (breadth first, so nearer zones come first) up to
+    a number of steps, and asks the SoundLoader for each sound it finds
+    that isn't in the SoundList yet.
+
+    To stay out of the way:
+    - At most maxClips sounds are asked for per move.
+    - Nothing is prefetched while the cache is more than 3/4 full, so
+      prefetching doesn't push out clips that were actually played.
+    - Prefetches only go into free room in the loader's queue and never
+      push out a load the player is waiting on (see SoundLoader.prefetch).
+    - The walk itself is cheap and done on the caller's thread; the
+      loading is done by the loader's low priority threads.
+*/
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+class SoundPrefetcher {
+    static final int DEPTH = 3;		// How many exits away to look.
+    static final int MAX_CLIPS = 2;	// Most sounds to ask for per move.
+
+    private SoundLoader	loader;
+    private SoundList	soundList;
+    private int		depth;
+    private int		maxClips;
+
+    SoundPrefetcher( SoundLoader loader, SoundList soundList ) {
+        this( loader, soundList, DEPTH, MAX_CLIPS );
+    }
+    SoundPrefetcher( SoundLoader loader, SoundList soundList, int depth, int maxClips ) {
+        this.loader = loader;
+        this.soundList = soundList;
+        this.depth = depth;
+        this.maxClips = maxClips;
+    }
+
+    // The player is now at here: start loading the sounds around them.
+    // Return how many loads were asked for.
+    public int moved( Location here ) {
+        if ( soundList.getBytes()>soundList.getBudget()/4*3 ) return 0;
+        Vector sounds = nearbySounds( here );
+        int asked = 0;
+        for ( int i=0; i<sounds.size() && asked<maxClips; i++ ) {
+            String sound = (String)sounds.elementAt( i );
+            if ( soundList.hasClip(sound) ) continue;
+            if ( loader.prefetch(sound)==null ) break;	// Loader is busy enough.
+            asked++;
+        }
+        return asked;
+    }
+
+    // Return the distinct sounds within depth exits of here, nearest
+    // first, not counting here's own.
+    Vector nearbySounds( Location here ) {
+        Vector sounds = new Vector();
+        Hashtable seen = new Hashtable();	// Locations and sounds already seen.
+        Vector ring = new Vector();		// Locations exactly step exits away.
+        ring.add( here );
+        seen.put( here, Boolean.TRUE );
+        if ( here.getSound()!=null ) seen.put( here.getSound(), Boolean.TRUE );
+        for ( int step=0; step<depth && !ring.isEmpty(); step++ ) {
+            Vector next = new Vector();
+            for ( int i=0; i<ring.size(); i++ ) {
+                Location location = (Location)ring.elementAt( i );
+                for ( int direction=Exit.NORTH; direction<=Exit.DOWN; direction++ ) {
+                    Exit exit = location.getExit( direction );
+                    if ( exit==null || exit.getLeadsTo()==null ) continue;
+                    Location to = exit.getLeadsTo();
+                    if ( seen.put(to, Boolean.TRUE)!=null ) continue;
+                    next.add( to );
+                    String sound = to.getSound();
+                    if ( sound!=null && seen.put(sound, Boolean.TRUE)==null ) sounds.add( sound );
+                }
+            }
+            ring = next;
+        }
+        return sounds;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+    The sound zones of a world: which rooms play which background sound.
+    They used to be typed into WorldTemplate by room number; now they are
+    read from hm_audio.json, in the same format the JavaScript version
+    uses:
+
+        { "zones": {
+            "foyer": { "soundFile": "foyer.au", "rooms": [1, 2] },
+            "ballroom": { "soundFile": "ballroom.au", "rooms": [15, 29],
+                          "enabled": false },
+            ...
+        } }
+
+    Each zone gets a small number, its zone ID (0 means no zone), and each
+    room is given the ID of its zone, so "has the player changed zones?"
+    is an int comparison.  IDs go by zone name in alphabetical order, so
+    the same file always gives the same IDs.  A zone that is
+    "enabled": false, or has no soundFile, keeps its ID but is silent.
+*/
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+public class SoundZones {
+    public static final String FILE_NAME = "hm_audio.json";
+    public static final int NONE = 0;	// Zone ID of rooms that aren't in one.
+
+    private String[]	names;		// By zone ID ([0] is null).
+    private String[]	sounds;		// By zone ID, null if silent.
+    private int[]	roomZones;	// By room number.
+
+    // Zones from tables: names and sounds by zone ID (entry 0 unused),
+    // and each room's zone ID.
+    public SoundZones( String[] names, String[] sounds, int[] roomZones ) {
+        this.names = names;
+        this.sounds = sounds;
+        this.roomZones = roomZones;
+    }
+    // No zones at all: every room is silent.
+    public SoundZones( int numRooms ) {
+        this( new String[1], new String[1], new int[numRooms] );
+    }
+
+    // Read the zones for a map of numRooms rooms from a hm_audio.json.
+    // Rooms the map doesn't have are ignored.
+    public static SoundZones load( URL url, int numRooms ) throws IOException {
+        Object json = JSONReader.parse( url );
+        Hashtable zones = json instanceof Hashtable ? (Hashtable)((Hashtable)json).get( "zones" ) : null;
+        if ( zones==null ) throw new IOException( url+" has no \"zones\"" );
+
+        // Sort the zone names, so IDs don't depend on hashing.
+        Vector sorted = new Vector();
+        for ( Enumeration e = zones.keys(); e.hasMoreElements(); ) {
+            String name = (String)e.nextElement();
+            int at = 0;
+            while ( at<sorted.size() && ((String)sorted.elementAt(at)).compareTo(name)<0 ) at++;
+            sorted.insertElementAt( name, at );
+        }
+
+        String[] names = new String[ sorted.size()+1 ];
+        String[] sounds = new String[ sorted.size()+1 ];
+        int[] roomZones = new int[ numRooms ];
+        Hashtable soundFiles = new Hashtable();		// To share equal file names.
+        for ( int id=1; id<names.length; id++ ) {
+            names[id] = (String)sorted.elementAt( id-1 );
+            if ( !(zones.get(names[id]) instanceof Hashtable) ) {
+                throw new IOException( "Zone \""+names[id]+"\" in "+url+" isn't an object" );
+            }
+            Hashtable zone = (Hashtable)zones.get( names[id] );
+            String soundFile = JSONReader.getString( zone, "soundFile" );
+            if ( soundFile!=null && !Boolean.FALSE.equals(zone.get("enabled")) ) {
+                String same = (String)soundFiles.get( soundFile );
+                if ( same==null ) soundFiles.put( soundFile, same = soundFile );
+                sounds[id] = same;
+            }
+            Object rooms = zone.get( "rooms" );
+            if ( !(rooms instanceof Vector) ) continue;
+            for ( int i=0; i<((Vector)rooms).size(); i++ ) {
+                Object room = ((Vector)rooms).elementAt( i );
+                if ( !(room instanceof Number) ) continue;
+                int number = ((Number)room).intValue();
+                if ( number<0 || number>=numRooms ) continue;
+                if ( roomZones[number]!=NONE ) {
+                    Log.warning( "Room "+number+" is in zones "+names[roomZones[number]]
+                                        +" and "+names[id]+", using "+names[id]+"." );
+                }
+                roomZones[number] = id;
+            }
+        }
+        return new SoundZones( names, sounds, roomZones );
+    }
+
+    // Return how many zone IDs there are (including NONE).
+    public int getNumZones() {
+        return names.length;
+    }
+    // Return a zone's name (null for NONE).
+    public String getName( int zone ) {
+        return names[zone];
+    }
+    // Return the sound a zone plays, or null if it is silent.
+    public String getSound( int zone ) {
+        return sounds[zone];
+    }
+    // Return the zone a room is in (NONE if it isn't in one).
+    public int getZone( int room ) {
+        return room<roomZones.length ? roomZones[room] : NONE;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+    An AudioClip that streams its sound from a file or URL through
+    javax.sound.sampled instead of loading the whole thing first, so it
+    can be used with or without an applet.
+
+    Creating one reads just the start of the sound (the "head", up to
+    HEAD_BYTES of decoded audio) and keeps it, so play() or loop() can
+    start the instant they are called.  While it plays, one thread decodes
+    into a small ring buffer (RING_BYTES) and another copies from the ring
+    to the audio line.  When a looping sound reaches its end the decoder
+    goes straight back to the head and reopens the stream behind it while
+    the ring is still full, so there is no gap at the loop point.  Memory
+    is the head plus one ring per playing clip, however long the sound.
+
+    If there is no audio device (a headless box, or no mixer with a line
+    for the format) the sound is played into a "null line" that throws it
+    away at the proper rate, so everything else still runs the same.
+
+        java StreamClip sound.au [seconds]
+
+    loops a sound file for a while (default 5 seconds) and reports what
+    happened.
+*/
+
+import java.applet.AudioClip;
+import java.io.*;
+import java.net.URL;
+import javax.sound.sampled.*;
+
+public class StreamClip implements AudioClip {
+    static final int HEAD_BYTES = 16*1024;	// Decoded audio kept from the start.
+    static final int RING_BYTES = 32*1024;	// Buffer between decoder and line.
+
+    private URL		url;
+    private AudioFormat	format;		// What we hand the line (always PCM).
+    private byte[]	head;		// First bytes of decoded audio.
+    private int		headLength;
+    private boolean	headIsAll;	// The whole sound fits in the head.
+    private Playback	playing;	// Current playback, or null.
+
+    // Open a sound and read its head.  Throws if it can't be read or decoded.
+    public StreamClip( URL url ) throws IOException {
+        this.url = url;
+        AudioInputStream in = open();
+        try {
+            format = in.getFormat();
+            int frame = Math.max( 1, format.getFrameSize() );
+            head = new byte[ HEAD_BYTES/frame*frame ];
+            headLength = readFully( in, head, 0, head.length );
+            headIsAll = headLength<head.length || in.read( new byte[frame] )<=0;
+        } finally {
+            in.close();
+        }
+    }
+
+    // Open the sound as PCM, converting it (from mu-law, say) if need be.
+    private AudioInputStream open() throws IOException {
+        AudioInputStream in;
+        try {
+            in = AudioSystem.getAudioInputStream( url );
+        } catch (UnsupportedAudioFileException e) {
+            throw new IOException( "Unsupported sound format: "+url );
+        }
+        AudioFormat.Encoding encoding = in.getFormat().getEncoding();
+        if ( encoding.equals(AudioFormat.Encoding.PCM_SIGNED)
+             || encoding.equals(AudioFormat.Encoding.PCM_UNSIGNED) ) return in;
+        AudioFormat from = in.getFormat();
+        AudioFormat pcm = new AudioFormat( AudioFormat.Encoding.PCM_SIGNED, from.getSampleRate(), 16,
+            from.getChannels(), from.getChannels()*2, from.getSampleRate(), false );
+        try {
+            return AudioSystem.getAudioInputStream( pcm, in );
+        } catch (IllegalArgumentException e) {
+            in.close();
+            throw new IOException( "Can't decode "+url+": "+e.getMessage() );
+        }
+    }
+
+    private static int readFully( InputStream in, byte[] buf, int off, int len ) throws IOException {
+        int total = 0;
+        while ( total<len ) {
+            int n = in.read( buf, off+total, len-total );
+            if ( n<=0 ) break;
+            total += n;
+        }
+        return total;
+    }
+
+    public void play() {
+        start( false );
+    }
+    public void loop() {
+        start( true );
+    }
+    public synchronized void stop() {
+        if ( playing!=null ) playing.cancel();
+        playing = null;
+    }
+
+    private synchronized void start( boolean looping ) {
+        stop();
+        // No frames, nothing to play: looping would just go round and round
+        // the empty head without ever waiting on the ring.
+        if ( headLength==0 ) return;
+        playing = new Playback( looping );
+    }
+
+    // Return the PCM format the sound is played in.
+    public AudioFormat getFormat() {
+        return format;
+    }
+    // Return about how much memory the clip holds while playing.
+    public long getMemory() {
+        return head.length+RING_BYTES;
+    }
+    // Is it playing?
+    public synchronized boolean isPlaying() {
+        return playing!=null && !playing.finished;
+    }
+    // Return the current (or last) playback, for its counters.
+    synchronized Playback getPlayback() {
+        return playing;
+    }
+
+    // One go at playing the sound: a decoder thread and an output thread
+    // with a ring buffer between them.
+    class Playback {
+        boolean		looping;
+        ByteRing	ring = new ByteRing( RING_BYTES );
+        volatile boolean	cancelled = false;
+        volatile boolean	finished = false;
+        volatile int	loops = 0;		// Times round (looping).
+        volatile long	firstSound = -1;	// Nanoseconds from start to first write.
+        volatile boolean	nullLine = false;	// Using the null line?
+        private long	started = System.nanoTime();
+        private Thread	decoder, output;
+
+        Playback( boolean looping ) {
+            this.looping = looping;
+            decoder = new Thread( "StreamClip decoder" ) {
+                public void run() {
+                    decode();
+                }
+            };
+            output = new Thread( "StreamClip output" ) {
+                public void run() {
+                    play();
+                }
+            };
+            decoder.setDaemon( true );
+            output.setDaemon( true );
+            output.setPriority( Thread.MAX_PRIORITY );	// Keep the line fed.
+            decoder.start();
+            output.start();
+        }
+
+        void cancel() {
+            cancelled = true;
+            ring.abort();
+            output.interrupt();
+        }
+
+        // Fill the ring: the head, then the rest of the stream, and round again.
+        private void decode() {
+            byte[] buf = new byte[ 4096/Math.max(1, format.getFrameSize())*Math.max(1, format.getFrameSize()) ];
+            try {
+                do {
+                    if ( !ring.put(head, 0, headLength) ) return;
+                    if ( headIsAll ) {
+                        loops++;
+                        continue;
+                    }
+                    AudioInputStream in = open();
+                    try {
+                        long skip = headLength;
+                        while ( skip>0 ) {
+                            long n = in.skip( skip );
+                            if ( n<=0 ) break;
+                            skip -= n;
+                        }
+                        int n;
+                        while ( (n = in.read(buf, 0, buf.length))>0 ) {
+                            if ( !ring.put(buf, 0, n) ) return;
+                        }
+                    } finally {
+                        in.close();
+                    }
+                    loops++;
+                } while ( looping && !cancelled );
+            } catch (IOException e) {
+                Log.warning( "Error streaming sound '"+url+"': "+e );
+            } finally {
+                ring.close();
+            }
+        }
+
+        // Empty the ring into the line.
+        private void play() {
+            Output out = openOutput();
+            byte[] buf = new byte[ 4096/Math.max(1, format.getFrameSize())*Math.max(1, format.getFrameSize()) ];
+            try {
+                int n;
+                while ( (n = ring.take(buf, 0, buf.length))>0 ) {
+                    if ( firstSound<0 ) firstSound = System.nanoTime()-started;
+                    out.write( buf, 0, n );
+                }
+                if ( !cancelled ) out.drain();
+            } catch (InterruptedException e) {
+                // Stopped.
+            } finally {
+                out.close( cancelled );
+                finished = true;
+            }
+        }
+
+        // Get a line for our format, or a null line if there isn't one.
+        private Output openOutput() {
+            try {
+                SourceDataLine line = AudioSystem.getSourceDataLine( format );
+                line.open( format, RING_BYTES/2/format.getFrameSize()*format.getFrameSize() );
+                line.start();
+                return new LineOutput( line );
+            } catch (Exception e) {		// LineUnavailable, IllegalArgument (no mixer), ...
+                nullLine = true;
+                return new NullOutput( format );
+            }
+        }
+    }
+
+    // Where decoded sound ends up.
+    interface Output {
+        public void write( byte[] buf, int off, int len ) throws InterruptedException;
+        public void drain() throws InterruptedException;
+        public void close( boolean now );
+    }
+
+    // A real audio line.
+    static class LineOutput implements Output {
+        SourceDataLine line;
+
+        LineOutput( SourceDataLine line ) {
+            this.line = line;
+        }
+        public void write( byte[] buf, int off, int len ) throws InterruptedException {
+            line.write( buf, off, len );
+            if ( Thread.interrupted() ) throw new InterruptedException();
+        }
+        public void drain() {
+            line.drain();
+        }
+        public void close( boolean now ) {
+            if ( now ) {
+                line.stop();
+                line.flush();
+            }
+            line.close();
+        }
+    }
+
+    // No audio device: take the sound at the rate a line would and drop it.
+    static class NullOutput implements Output {
+        double	bytesPerNano;
+        long	start = System.nanoTime();
+        long	written = 0;
+
+        NullOutput( AudioFormat format ) {
+            bytesPerNano = format.getFrameRate()*format.getFrameSize()/1e9;
+        }
+        public void write( byte[] buf, int off, int len ) throws InterruptedException {
+            written += len;
+            drain();
+        }
+        public void drain() throws InterruptedException {
+            long due = start+(long)( written/bytesPerNano );
+            long wait = due-System.nanoTime();
+            if ( wait>0 ) Thread.sleep( wait/1000000, (int)(wait%1000000) );
+        }
+        public void close( boolean now ) {
+        }
+    }
+
+    // Loop a sound file for a while, to try it out (works headless).
+    public static void main( String[] argv ) throws Exception {
+        if ( argv.length<1 ) {
+            System.out.println( "Usage: java StreamClip sound.au [seconds]" );
+            return;
+        }
+        long opened = System.nanoTime();
+        StreamClip clip = new StreamClip( new File(argv[0]).toURI().toURL() );
+        opened = System.nanoTime()-opened;
+        int seconds = argv.length>1 ? Integer.parseInt(argv[1]) : 5;
+        System.out.println( argv[0]+": "+clip.getFormat() );
+        System.out.println( "Opened in "+opened/1000+"us, holding "+clip.getMemory()+" bytes." );
+        clip.loop();
+        Thread.sleep( seconds*1000L );
+        Playback playback = clip.getPlayback();
+        clip.stop();
+        if ( playback==null ) {
+            System.out.println( "The sound is empty, so there was nothing to play." );
+            return;
+        }
+        System.out.println( "First sound after "+playback.firstSound/1000+"us"
+            +(playback.nullLine ? " (no audio device, used a null line)" : "")
+            +", "+playback.loops+" times round in "+seconds+"s." );
+    }
+}
@@ -0,0 +1,39 @@
+/*
+    Output to a stream: the console, or a player's socket.  Each response
+    goes out with one write and one flush.
+*/
+
+import java.io.*;
+
+public class StreamSink extends OutputSink {
+    private Writer	out;
+    private char[]	chars = new char[1024];	// Reused to copy each response out.
+    private IOException	error;			// First write that failed, if any.
+
+    // Write to a stream in the platform's default encoding.
+    public StreamSink( OutputStream out ) {
+        this( new OutputStreamWriter(out) );
+    }
+    // Write to a character stream.
+    public StreamSink( Writer out ) {
+        this.out = out;
+    }
+
+    protected void write( StringBuffer text ) {
+        if ( error!=null ) return;		// The other end is gone.
+        int n = text.length();
+        if ( chars.length<n ) chars = new char[ Math.max(n, chars.length*2) ];
+        text.getChars( 0, n, chars, 0 );
+        try {
+            out.write( chars, 0, n );
+            out.flush();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    // Return the exception that stopped output (null if all is well).
+    public IOException getError() {
+        return error;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+    Output into an AWT TextArea, one append per response, with a limit on
+    how much scrollback is kept.  When the text would go over the limit
+    the oldest lines are dropped, cutting at a line break, and the whole
+    area is replaced with a single setText().  The length is tracked here
+    so the area's text doesn't have to be fetched (copied) on every append.
+*/
+
+import java.awt.TextArea;
+
+public class TextAreaSink extends OutputSink {
+    private TextArea	area;
+    private int		maxChars;	// Most scrollback to keep.
+    private int		length;		// How much text the area holds.
+
+    // Write into area, keeping at most maxChars of text.
+    public TextAreaSink( TextArea area, int maxChars ) {
+        this.area = area;
+        this.maxChars = maxChars;
+        length = area.getText().length();
+    }
+
+    protected void write( StringBuffer text ) {
+        if ( length+text.length()<=maxChars ) {
+            area.append( text.toString() );
+            length += text.length();
+            return;
+        }
+        // Too much: keep the newest text that fits, starting on a new line.
+        String old = area.getText();
+        int keep = Math.max( 0, maxChars-text.length() );
+        int cut = old.length()-Math.min( keep, old.length() );
+        if ( cut>0 && cut<old.length() ) {
+            int newline = old.indexOf( '\n', cut-1 );
+            cut = newline<0 ? old.length() : newline+1;
+        }
+        StringBuffer all = new StringBuffer( old.length()-cut+text.length() );
+        all.append( old, cut, old.length() ).append( text );
+        if ( all.length()>maxChars ) all.delete( 0, all.length()-maxChars );
+        area.setText( all.toString() );
+        area.setCaretPosition( all.length() );	// Stay scrolled to the bottom.
+        length = all.length();
+    }
+}
@@ -0,0 +1,9 @@
+/*
+    A command the game understands (GO, GET, LOOK...).  Verbs are looked up
+    in a VerbTable by the first word the player types; the rest of the
+    line is handed over already split up by the session's CommandTokenizer.
+*/
+public interface Verb {
+    // Carry out the command for this session, appending the response.
+    public void execute( GameSession session, CommandTokenizer command, StringBuffer desc );
+}
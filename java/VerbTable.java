@@ -0,0 +1,83 @@
+/*
+    Maps the first word of a command to the Verb that handles it.  Every
+    spelling of a verb (GET/TAKE, LOOK/EXAMINE/L...) is registered once, so
+    finding the handler is a single hash lookup no matter how many verbs
+    the game knows.  An alias may also supply the noun, which is how the
+    one letter directions turn into GO NORTH and friends.
+
+    Words are kept in a KeywordTable, which ignores case, so looking up
+    what the player typed doesn't need an upper cased copy of it first.
+
+    Each verb's counters come from the GameMetrics the table was made with
+    (GameEngine passes its own); a table made without one keeps none.
+*/
+
+public class VerbTable {
+    private KeywordTable	verbs = new KeywordTable( 32 );	// Word -> Entry.
+    private GameMetrics		metrics;			// Where verb counters come from, or null.
+
+    // Create an empty table that keeps no counters.
+    public VerbTable()
+    {
+        this( null );
+    }
+    // Create an empty table whose verbs count themselves in metrics.
+    public VerbTable( GameMetrics metrics )
+    {
+        this.metrics = metrics;
+    }
+
+    // What a word resolves to: the handler, plus a noun if the word implies one.
+    public static class Entry {
+        private Verb	verb;
+        private String	noun;
+        private GameMetrics.VerbStats	stats;	// Shared by all spellings of the verb.
+
+        Entry( Verb verb, String noun, GameMetrics.VerbStats stats ) {
+            this.verb = verb;
+            this.noun = noun;
+            this.stats = stats;
+        }
+        // Return the handler.
+        public Verb getVerb() {
+            return verb;
+        }
+        // Return the implied noun (null if the player's own noun is used).
+        public String getNoun() {
+            return noun;
+        }
+        // Return the verb's counters (null if the table keeps none).
+        public GameMetrics.VerbStats getStats() {
+            return stats;
+        }
+    }
+
+    // Add (or replace) a verb.
+    public void register( String word, Verb verb )
+    {
+        GameMetrics.VerbStats stats = metrics==null ? null : metrics.verb( word.toUpperCase() );
+        verbs.put( word, new Entry(verb, null, stats) );
+    }
+    // Make word another name for an already registered verb.
+    public void alias( String word, String verbWord )
+    {
+        alias( word, verbWord, null );
+    }
+    // Make word mean "verbWord noun", such as N for GO NORTH.
+    public void alias( String word, String verbWord, String noun )
+    {
+        Entry entry = lookup( verbWord );
+        if ( entry==null ) throw new IllegalArgumentException( "Unknown verb: "+verbWord );
+        verbs.put( word, new Entry(entry.getVerb(), noun, entry.getStats()) );
+    }
+    // Return what a word means, or null if we don't know it.
+    public Entry lookup( String word )
+    {
+        return lookup( word, 0, word.length() );
+    }
+    // Same, for the word found between start and end of some text.
+    public Entry lookup( CharSequence text, int start, int end )
+    {
+        return (Entry)verbs.get( text, start, end );
+    }
+}
@@ -0,0 +1,406 @@
+/*
+    A compiled, binary copy of the world, so starting up doesn't have to
+    tokenize CSV files.  Build one with
+
+        java WorldSnapshot [-dir .] [-map hm_map.json] [-audio hm_audio.json] [-o hm_world.dat]
+
+    which reads hm_map.csv, hm_items.csv and hm_audio.json from -dir,
+    optionally replaces
+    the rooms with those in a hm_map.json and the sound zones with those in
+    a hm_audio.json (both in the JavaScript version's format), and writes
+    the result.  WorldTemplate.get() uses hm_world.dat instead of the CSV
+    files whenever it finds one next to them.  A local hm_world.dat older
+    than hm_map.csv, hm_items.csv or hm_audio.json is ignored and rebuilt
+    from the CSV files (losing any -map or -audio changes), so after
+    changing those JSON files run this again.
+
+    The file is big-endian and laid out so it can be mapped straight into
+    memory and read with bulk gets:
+
+        int  magic ('HMW1'), int version
+        int  rooms, int items, int zones, int strings, int string bytes
+        int  string offsets[strings+1]	(into the string bytes)
+        int  zone table[zones*2]	(name, sound; zone 0 is no zone)
+        int  room table[rooms*9]	(name, description, zone ID, 6 exits)
+        int  item table[items*5]	(location, keyword, name, description, getable)
+        byte string bytes		(UTF-8)
+
+    Strings are referred to by number, -1 for null, and each distinct
+    string is stored once.
+*/
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.Hashtable;
+import java.util.Vector;
+
+public class WorldSnapshot {
+    public static final String FILE_NAME = "hm_world.dat";	// Default snapshot name.
+    public static final int MAGIC = 0x484D5731;	// "HMW1"
+    public static final int VERSION = 2;	// 2: sound zones by ID.
+
+    private static final int HEADER_INTS = 7;
+    private static final int ZONE_INTS = 2;
+    private static final int ROOM_INTS = 9;
+    private static final int ITEM_INTS = 5;
+
+    // The files a snapshot is built from, found next to it.
+    static final String[] SOURCES = { "hm_map.csv", "hm_items.csv", SoundZones.FILE_NAME };
+
+    // Load a snapshot from a URL (mapped into memory if it is a local file).
+    public static WorldTemplate load( URL url ) throws IOException {
+        if ( "file".equals(url.getProtocol()) ) {
+            try {
+                return load( new File(url.toURI()) );
+            } catch (URISyntaxException e) {
+                // Fall through and read it as a stream.
+            }
+        }
+        InputStream in = url.openStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[16384];
+        int n;
+        while ( (n = in.read(chunk))>0 ) bytes.write( chunk, 0, n );
+        in.close();
+        return read( ByteBuffer.wrap(bytes.toByteArray()) );
+    }
+    // Load a snapshot file by mapping it into memory.
+    public static WorldTemplate load( File file ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try {
+            FileChannel channel = raf.getChannel();
+            return read( channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) );
+        } finally {
+            raf.close();
+        }
+    }
+
+    // Return the snapshot file at a (file:) code base if it is older than
+    // any of its sources, otherwise null (up to date, missing, or not a
+    // local file, which can't be rebuilt anyway).
+    static File staleFile( URL docBase ) {
+        if ( !"file".equals(docBase.getProtocol()) ) return null;
+        File dir;
+        try {
+            dir = new File( docBase.toURI() );
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        File snapshot = new File( dir, FILE_NAME );
+        long built = snapshot.lastModified();
+        if ( built==0 ) return null;
+        for ( int i=0; i<SOURCES.length; i++ ) {
+            if ( new File(dir, SOURCES[i]).lastModified()>built ) return snapshot;
+        }
+        return null;
+    }
+
+    // Build a world from snapshot bytes.
+    public static WorldTemplate read( ByteBuffer buf ) throws IOException {
+        buf.order( ByteOrder.BIG_ENDIAN );
+        try {
+            if ( buf.getInt(0)!=MAGIC ) throw new IOException( "Not a world snapshot" );
+            if ( buf.getInt(4)!=VERSION ) throw new IOException( "Unsupported world snapshot version "+buf.getInt(4) );
+            int numRooms = buf.getInt( 8 );
+            int numItems = buf.getInt( 12 );
+            int numZones = buf.getInt( 16 );
+            int numStrings = buf.getInt( 20 );
+            int stringBytes = buf.getInt( 24 );
+            if ( numZones<1 ) throw new IOException( "World snapshot has no zone table" );
+
+            // Pull each table out with a single bulk get.
+            ByteBuffer tables = buf.duplicate();
+            tables.position( HEADER_INTS*4 );
+            IntBuffer ints = tables.asIntBuffer();
+            int[] offsets = new int[ numStrings+1 ];
+            int[] zoneTable = new int[ numZones*ZONE_INTS ];
+            int[] rooms = new int[ numRooms*ROOM_INTS ];
+            int[] itemTable = new int[ numItems*ITEM_INTS ];
+            ints.get( offsets );
+            ints.get( zoneTable );
+            ints.get( rooms );
+            ints.get( itemTable );
+            byte[] utf8 = new byte[ stringBytes ];
+            ByteBuffer blob = buf.duplicate();
+            blob.position( (HEADER_INTS+offsets.length+zoneTable.length+rooms.length+itemTable.length)*4 );
+            blob.get( utf8 );
+
+            String[] strings = new String[ numStrings ];
+            for ( int i=0; i<numStrings; i++ ) {
+                strings[i] = new String( utf8, offsets[i], offsets[i+1]-offsets[i], "UTF-8" );
+            }
+
+            String[] roomNames = new String[ numRooms ];
+            String[] roomDescs = new String[ numRooms ];
+            String[] zoneNames = new String[ numZones ];
+            String[] zoneSounds = new String[ numZones ];
+            for ( int i=0; i<numZones; i++ ) {
+                zoneNames[i] = string( strings, zoneTable[i*ZONE_INTS] );
+                zoneSounds[i] = string( strings, zoneTable[i*ZONE_INTS+1] );
+            }
+            int[] roomZones = new int[ numRooms ];
+            int[] roomExits = new int[ numRooms*6 ];
+            for ( int i=0; i<numRooms; i++ ) {
+                int at = i*ROOM_INTS;
+                roomNames[i] = string( strings, rooms[at] );
+                roomDescs[i] = string( strings, rooms[at+1] );
+                roomZones[i] = rooms[at+2];
+                if ( roomZones[i]<0 || roomZones[i]>=numZones ) throw new IOException( "Room "+i+" has a bad zone" );
+                for ( int j=0; j<6; j++ ) {
+                    int target = rooms[at+3+j];
+                    if ( target<0 || target>=numRooms ) throw new IOException( "Room "+i+" has a bad exit "+target );
+                    roomExits[i*6+j] = target;
+                }
+            }
+            int[] itemLocation = new int[ numItems ];
+            String[] itemKeyword = new String[ numItems ];
+            String[] itemName = new String[ numItems ];
+            String[] itemDescription = new String[ numItems ];
+            boolean[] itemGetable = new boolean[ numItems ];
+            for ( int i=0; i<numItems; i++ ) {
+                int at = i*ITEM_INTS;
+                itemLocation[i] = itemTable[at];
+                if ( itemLocation[i]<0 || itemLocation[i]>=numRooms ) throw new IOException( "Item "+i+" is in a bad room" );
+                itemKeyword[i] = string( strings, itemTable[at+1] );
+                itemName[i] = string( strings, itemTable[at+2] );
+                itemDescription[i] = string( strings, itemTable[at+3] );
+                itemGetable[i] = itemTable[at+4]!=0;
+            }
+            SoundZones zones = new SoundZones( zoneNames, zoneSounds, roomZones );
+            return new WorldTemplate( numRooms, roomNames, roomDescs, zones, roomExits,
+                numItems, itemLocation, itemKeyword, itemName, itemDescription, itemGetable );
+        } catch (BufferUnderflowException e) {
+            throw new IOException( "World snapshot is truncated" );
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException( "World snapshot is corrupt" );
+        } catch (IllegalArgumentException e) {
+            throw new IOException( "World snapshot is corrupt: "+e.getMessage() );
+        }
+    }
+
+    private static String string( String[] strings, int index ) throws IOException {
+        if ( index==-1 ) return null;
+        if ( index<0 || index>=strings.length ) throw new IOException( "Bad string reference "+index );
+        return strings[index];
+    }
+
+    // Write a world out as a snapshot.
+    public static void write( WorldTemplate world, OutputStream out ) throws IOException {
+        Hashtable stringIndex = new Hashtable();	// String -> Integer.
+        Vector strings = new Vector();
+        int numRooms = world.getNumLocations();
+        int numItems = world.getNumItems();
+        SoundZones zones = world.getSoundZones();
+
+        int[] zoneTable = new int[ zones.getNumZones()*ZONE_INTS ];
+        for ( int i=0; i<zones.getNumZones(); i++ ) {
+            zoneTable[i*ZONE_INTS] = intern( zones.getName(i), stringIndex, strings );
+            zoneTable[i*ZONE_INTS+1] = intern( zones.getSound(i), stringIndex, strings );
+        }
+        int[] rooms = new int[ numRooms*ROOM_INTS ];
+        for ( int i=0; i<numRooms; i++ ) {
+            Location location = world.getLocation( i );
+            rooms[i*ROOM_INTS] = intern( location.getName(), stringIndex, strings );
+            rooms[i*ROOM_INTS+1] = intern( location.getDescription(), stringIndex, strings );
+            rooms[i*ROOM_INTS+2] = location.getZone();
+            for ( int j=0; j<6; j++ ) rooms[i*ROOM_INTS+3+j] = world.getExitTarget( i, j+1 );
+        }
+        int[] items = new int[ numItems*ITEM_INTS ];
+        for ( int i=0; i<numItems; i++ ) {
+            Item item = world.getItem( i );
+            items[i*ITEM_INTS] = world.getItemLocation( i );
+            items[i*ITEM_INTS+1] = intern( item.getKeyword(), stringIndex, strings );
+            items[i*ITEM_INTS+2] = intern( item.getName(), stringIndex, strings );
+            items[i*ITEM_INTS+3] = intern( item.getDescription(), stringIndex, strings );
+            items[i*ITEM_INTS+4] = item.isGetable() ? 1 : 0;
+        }
+
+        ByteArrayOutputStream utf8 = new ByteArrayOutputStream();
+        int[] offsets = new int[ strings.size()+1 ];
+        for ( int i=0; i<strings.size(); i++ ) {
+            offsets[i] = utf8.size();
+            utf8.write( ((String)strings.elementAt(i)).getBytes("UTF-8") );
+        }
+        offsets[ strings.size() ] = utf8.size();
+
+        DataOutputStream data = new DataOutputStream( new BufferedOutputStream(out) );
+        data.writeInt( MAGIC );
+        data.writeInt( VERSION );
+        data.writeInt( numRooms );
+        data.writeInt( numItems );
+        data.writeInt( zones.getNumZones() );
+        data.writeInt( strings.size() );
+        data.writeInt( utf8.size() );
+        writeInts( data, offsets );
+        writeInts( data, zoneTable );
+        writeInts( data, rooms );
+        writeInts( data, items );
+        utf8.writeTo( data );
+        data.flush();
+    }
+
+    // Write a world out as a snapshot file.  It is written next to the
+    // file and renamed over it, so anyone mapping the old one still sees
+    // a whole file.
+    public static void write( WorldTemplate world, File file ) throws IOException {
+        File temp = new File( file.getPath()+".tmp" );
+        OutputStream out = new FileOutputStream( temp );
+        try {
+            write( world, out );
+        } finally {
+            out.close();
+        }
+        if ( !temp.renameTo(file) ) {
+            file.delete();	// Some systems won't rename over a file.
+            if ( !temp.renameTo(file) ) {
+                temp.delete();
+                throw new IOException( "Unable to rename "+temp+" to "+file );
+            }
+        }
+    }
+
+    private static void writeInts( DataOutputStream data, int[] ints ) throws IOException {
+        for ( int i=0; i<ints.length; i++ ) data.writeInt( ints[i] );
+    }
+
+    // Return the number of a string, adding it to the table if new.
+    private static int intern( String s, Hashtable stringIndex, Vector strings ) {
+        if ( s==null ) return -1;
+        Integer index = (Integer)stringIndex.get( s );
+        if ( index==null ) {
+            index = Integer.valueOf( strings.size() );
+            strings.add( s );
+            stringIndex.put( s, index );
+        }
+        return index.intValue();
+    }
+
+    // Replace a world's rooms with those in a hm_map.json (JavaScript version format).
+    // Rooms keep the sound zones they had.  Every room from 1 up to the
+    // highest id must be there.
+    static WorldTemplate withJSONMap( WorldTemplate world, URL map ) throws IOException {
+        Object json = JSONReader.parse( map );
+        Object list = json instanceof Hashtable ? ((Hashtable)json).get( "rooms" ) : null;
+        if ( !(list instanceof Vector) ) throw new IOException( "no rooms" );
+        Vector rooms = (Vector)list;
+        int numRooms = 0;
+        for ( int i=0; i<rooms.size(); i++ ) {
+            if ( !(rooms.elementAt(i) instanceof Hashtable) ) throw new IOException( "room "+i+" isn't an object" );
+            int id = JSONReader.getInt( (Hashtable)rooms.elementAt(i), "id", -1 );
+            if ( id<1 ) throw new IOException( "room "+i+" has a bad id" );
+            numRooms = Math.max( numRooms, id+1 );
+        }
+        String[] names = new String[ numRooms ];
+        String[] descs = new String[ numRooms ];
+        int[] exits = new int[ numRooms*6 ];
+        String[] directions = { "north", "south", "west", "east", "up", "down" };
+        for ( int i=0; i<rooms.size(); i++ ) {
+            Hashtable room = (Hashtable)rooms.elementAt( i );
+            int id = JSONReader.getInt( room, "id", 0 );
+            if ( names[id]!=null ) throw new IOException( "room "+id+" is there twice" );
+            names[id] = JSONReader.getString( room, "name" );
+            descs[id] = JSONReader.getString( room, "description" );
+            if ( names[id]==null ) names[id] = "";
+            if ( descs[id]==null ) descs[id] = "";
+            Object roomExits = room.get( "exits" );
+            for ( int j=0; j<6 && roomExits instanceof Hashtable; j++ ) {
+                exits[id*6+j] = JSONReader.getInt( (Hashtable)roomExits, directions[j], 0 );
+            }
+        }
+        for ( int i=1; i<numRooms; i++ ) {
+            if ( names[i]==null ) throw new IOException( "no room "+i );
+        }
+        SoundZones old = world.getSoundZones();
+        String[] zoneNames = new String[ old.getNumZones() ];
+        String[] zoneSounds = new String[ old.getNumZones() ];
+        for ( int i=0; i<zoneNames.length; i++ ) {
+            zoneNames[i] = old.getName( i );
+            zoneSounds[i] = old.getSound( i );
+        }
+        int[] roomZones = new int[ numRooms ];
+        for ( int i=0; i<numRooms; i++ ) roomZones[i] = old.getZone( i );
+        return rebuild( world, numRooms, names, descs, new SoundZones(zoneNames, zoneSounds, roomZones), exits );
+    }
+
+    // Replace a world's sound zones with those in a hm_audio.json.
+    static WorldTemplate withJSONAudio( WorldTemplate world, URL audio ) throws IOException {
+        int numRooms = world.getNumLocations();
+        String[] names = new String[ numRooms ];
+        String[] descs = new String[ numRooms ];
+        int[] exits = new int[ numRooms*6 ];
+        for ( int i=0; i<numRooms; i++ ) {
+            names[i] = world.getLocation( i ).getName();
+            descs[i] = world.getLocation( i ).getDescription();
+            for ( int j=0; j<6; j++ ) exits[i*6+j] = world.getExitTarget( i, j+1 );
+        }
+        return rebuild( world, numRooms, names, descs, SoundZones.load(audio, numRooms), exits );
+    }
+
+    // A new world with different rooms but the same items.
+    private static WorldTemplate rebuild( WorldTemplate world, int numRooms, String[] names,
+                                          String[] descs, SoundZones zones, int[] exits ) throws IOException {
+        int numItems = world.getNumItems();
+        int[] location = new int[ numItems ];
+        String[] keyword = new String[ numItems ];
+        String[] name = new String[ numItems ];
+        String[] description = new String[ numItems ];
+        boolean[] getable = new boolean[ numItems ];
+        for ( int i=0; i<numItems; i++ ) {
+            Item item = world.getItem( i );
+            location[i] = world.getItemLocation( i );
+            keyword[i] = item.getKeyword();
+            name[i] = item.getName();
+            description[i] = item.getDescription();
+            getable[i] = item.isGetable();
+        }
+        try {
+            return new WorldTemplate( numRooms, names, descs, zones, exits,
+                                      numItems, location, keyword, name, description, getable );
+        } catch (IllegalArgumentException e) {
+            throw new IOException( e.getMessage() );	// A bad exit, or an item in a room that's gone.
+        }
+    }
+
+    // Compile the CSV (and optionally JSON) world files into a snapshot.
+    public static void main( String[] argv ) throws IOException {
+        File dir = new File( "." );
+        File map = null;
+        File audio = null;
+        File output = null;
+        for ( int i=0; i<argv.length; i++ ) {
+            if ( argv[i].equals("-dir") && i+1<argv.length ) dir = new File( argv[++i] );
+            else if ( argv[i].equals("-map") && i+1<argv.length ) map = new File( argv[++i] );
+            else if ( argv[i].equals("-audio") && i+1<argv.length ) audio = new File( argv[++i] );
+            else if ( argv[i].equals("-o") && i+1<argv.length ) output = new File( argv[++i] );
+            else {
+                System.out.println( "Usage: java WorldSnapshot [-dir csvdir] [-map hm_map.json] "
+                                    +"[-audio hm_audio.json] [-o "+FILE_NAME+"]" );
+                return;
+            }
+        }
+        if ( output==null ) output = new File( dir, FILE_NAME );
+
+        WorldTemplate world = new WorldTemplate( dir.toURI().toURL() );
+        if ( !world.isLoaded() ) {
+            System.out.println( "Unable to load the world from "+dir );
+            System.exit( 1 );
+        }
+        File using = map;
+        try {
+            if ( map!=null ) world = withJSONMap( world, map.toURI().toURL() );
+            using = audio;
+            if ( audio!=null ) world = withJSONAudio( world, audio.toURI().toURL() );
+        } catch (IOException e) {
+            System.out.println( "Unable to use "+using+": "+e.getMessage() );
+            System.exit( 1 );
+        }
+
+        write( world, output );
+        System.out.println( "Wrote "+world.getNumLocations()+" rooms and "+world.getNumItems()
+                            +" items to "+output+" ("+output.length()+" bytes)." );
+    }
+}
@@ -0,0 +1,327 @@
+/*
+    The static part of the game world: rooms, their names and descriptions,
+    exits, sound zones (from hm_audio.json) and the items as they are placed when a game starts.
+    It is loaded from hm_map.csv/hm_items.csv once per code base and then
+    shared by every game (CreateWorld) in the JVM, so nothing in here may
+    change once loading is done.  Anything a player can change is kept in
+    their own CreateWorld instead.
+*/
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+import java.net.*;
+
+public final class WorldTemplate
+{
+    // Templates already loaded, keyed by code base.
+    private static Hashtable	templates = new Hashtable();
+
+    // The world as plain tables (what the files and snapshots hold).
+    private int		numRooms;
+    private int[]	roomExits;	// 6 per room (N,S,W,E,U,D), 0 for no exit.
+    private SoundZones	zones;		// Which rooms play which sound.
+    private int		numItems;
+    private int[]	itemLocation;	// Room number, 0 for the player's inventory.
+    private Item[]	items;
+
+    // ...and as the objects the game plays with.
+    private Location[]	locations = new Location[0];	// Every room, by room number.
+    private Vector	inventory = new Vector();	// Items the player starts out holding.
+    private Location	startLocation;			// Where a new game begins.
+    private boolean	loaded = false;			// Did both files load?
+    private Routes	routes;				// Shortest ways between rooms.
+    private MapValidator.Report	validation;		// What MapValidator made of the map.
+
+    // Return the shared template for a code base, loading it the first time.
+    // A compiled snapshot (see WorldSnapshot) is used if there is one and
+    // it is newer than the files it was built from, otherwise the CSV
+    // files are read (and a stale local snapshot is rebuilt from them).
+    public static synchronized WorldTemplate get( URL docBase )
+    {
+        WorldTemplate template = (WorldTemplate)templates.get( docBase.toString() );
+        if ( template==null ) {
+            long start = System.nanoTime();
+            String from = WorldSnapshot.FILE_NAME;
+            File stale = WorldSnapshot.staleFile( docBase );
+            template = null;
+            if ( stale!=null ) {
+                Log.info( "World snapshot "+stale+" is older than its sources, ignoring it" );
+            } else {
+                try {
+                    template = WorldSnapshot.load( new URL(docBase, WorldSnapshot.FILE_NAME) );
+                } catch (IOException e) {
+                    if ( Log.debugging() ) Log.debug( "No world snapshot -- "+e.toString() );
+                }
+            }
+            if ( template==null ) {
+                template = new WorldTemplate( docBase );
+                from = "CSV";
+                if ( stale!=null && template.loaded ) {
+                    try {
+                        WorldSnapshot.write( template, stale );
+                        Log.info( "Rebuilt world snapshot "+stale );
+                    } catch (IOException e) {
+                        Log.warning( "Couldn't rebuild world snapshot -- "+e.toString() );
+                    }
+                }
+            }
+            if ( template.loaded ) {
+                Log.info( "World loaded from "+from+" at "+docBase );
+                GameMetrics.get().worldLoaded( from+" at "+docBase, template.getNumLocations(),
+                                               System.nanoTime()-start );
+                template.validation.log();
+            }
+            // Only keep it if it worked, so the next caller gets to retry.
+            if ( template.loaded ) templates.put( docBase.toString(), template );
+        }
+        return template;
+    }
+
+    // Load the map and items from the CSV files found at docBase.
+    WorldTemplate( URL docBase ) {
+        int numRooms = 0;
+        // I want these to exist only during this scope.  They grow as
+        // needed, so a map can have any number of rooms.
+        String[] roomNames = new String[64];
+        String[] roomDescs = new String[64];
+        int[] roomExits = new int[64*6];
+
+        try {
+            Log.info( "Retrieving map from: "+docBase );
+            URL url=new URL( docBase, "hm_map.csv");
+            CSVReader csv = new CSVReader( new InputStreamReader(url.openStream()) );
+
+            // One record per room.  Descriptions may run over several lines.
+            while ( csv.nextRecord() ) {
+                if ( numRooms==roomNames.length ) {
+                    roomNames = (String[])grow( roomNames, numRooms*2 );
+                    roomDescs = (String[])grow( roomDescs, numRooms*2 );
+                    roomExits = (int[])grow( roomExits, numRooms*2*6 );
+                }
+                for ( int j=0; j<6; j++ ) {
+                    roomExits[numRooms*6+j] = csv.nextInt();
+                }
+                roomNames[numRooms] = csv.nextInterned();
+                roomDescs[numRooms] = csv.nextString();
+                numRooms++;
+            }
+            csv.close(); // Close access to this file/URL/whatever.
+            Log.info( numRooms+" rooms added to game." );
+            // Every exit has to lead to a room that is there.
+            int numExits = 0;
+            for ( int i=0; i<numRooms*6; i++ ) {
+                if ( roomExits[i]<0 || roomExits[i]>=numRooms ) {
+                    throw new IOException( "Room "+(i/6)+" has an exit to room "
+                                           +roomExits[i]+", which doesn't exist" );
+                }
+                if ( roomExits[i]!=0 ) numExits++;
+            }
+            Log.info( numExits+" exits added to game." );
+        } catch (IOException e) {
+            // If here, we were unable to process the map file.
+            Log.error( "Error -- "+e.toString() );
+            // Proceed no further!
+            return;
+        }
+
+        int numItems = 0;
+        int[] itemLocation = new int[32];
+        String[] itemKeyword = new String[32];
+        String[] itemName = new String[32];
+        String[] itemDescription = new String[32];
+        boolean[] itemGetable = new boolean[32];
+        boolean itemsLoaded = false;
+        try {
+            // Now lets process game items.
+            Log.info( "Retrieving item list from: "+docBase );
+            URL url=new URL( docBase, "hm_items.csv");
+            CSVReader csv = new CSVReader( new InputStreamReader(url.openStream()) );
+
+            while ( csv.nextRecord() ) {
+                if ( numItems==itemLocation.length ) {
+                    itemLocation = (int[])grow( itemLocation, numItems*2 );
+                    itemKeyword = (String[])grow( itemKeyword, numItems*2 );
+                    itemName = (String[])grow( itemName, numItems*2 );
+                    itemDescription = (String[])grow( itemDescription, numItems*2 );
+                    itemGetable = (boolean[])grow( itemGetable, numItems*2 );
+                }
+                itemLocation[numItems] = csv.nextInt();
+                if ( itemLocation[numItems]<0 || itemLocation[numItems]>=numRooms ) {
+                    throw csv.error( "Item is in room "+itemLocation[numItems]+", which doesn't exist" );
+                }
+                itemKeyword[numItems] = csv.nextInterned();
+                itemName[numItems] = csv.nextInterned();
+                itemDescription[numItems] = csv.nextString();
+                // Anything but "false" can be picked up.
+                itemGetable[numItems] = !( csv.nextField() && csv.fieldIs("false") );
+                numItems++;
+            }
+            csv.close(); // Close access to this file/URL/whatever.
+            itemsLoaded = true;
+        } catch (IOException e) {
+            Log.error( "Error -- "+e.toString() );
+            numItems = 0;
+        }
+/*
+        // ActionItem hack/test:
+        Location roof = new Location( "Roof", "You are on the roof." );
+        ActionItem ladder = new ActionItem( "ladder", "a tall metal ladder",
+            "It is a tall sturdy ladder that runs to the roof." );
+        ladder.setLeadsTo( roof );
+        tempLocation[1].addItem( ladder );
+*/
+        // Sound zones come from hm_audio.json (no file, no sound).
+        SoundZones zones;
+        try {
+            zones = SoundZones.load( new URL(docBase, SoundZones.FILE_NAME), numRooms );
+        } catch (IOException e) {
+            Log.warning( "No sound zones -- "+e.toString() );
+            zones = new SoundZones( numRooms );
+        }
+
+        build( numRooms, roomNames, roomDescs, zones, roomExits,
+               numItems, itemLocation, itemKeyword, itemName, itemDescription, itemGetable );
+        if ( itemsLoaded ) Log.info( numItems+" items added to game." );
+        loaded = itemsLoaded;
+    }
+
+    // Return a copy of an array, made longer.
+    private static Object grow( Object array, int length )
+    {
+        Object longer = Array.newInstance( array.getClass().getComponentType(), length );
+        System.arraycopy( array, 0, longer, 0, Array.getLength(array) );
+        return longer;
+    }
+    // Create a world straight from its tables (used by WorldSnapshot).
+    // The arrays may be longer than needed.  Throws
+    // IllegalArgumentException if an exit or item is in a room that isn't
+    // there.
+    WorldTemplate( int numRooms, String[] roomNames, String[] roomDescs, SoundZones zones,
+                   int[] roomExits, int numItems, int[] itemLocation, String[] itemKeyword,
+                   String[] itemName, String[] itemDescription, boolean[] itemGetable )
+    {
+        build( numRooms, roomNames, roomDescs, zones, roomExits,
+               numItems, itemLocation, itemKeyword, itemName, itemDescription, itemGetable );
+        loaded = true;
+    }
+
+    // Keep the tables and create the Location, Exit and Item objects from them.
+    private void build( int numRooms, String[] roomNames, String[] roomDescs, SoundZones zones,
+                        int[] roomExits, int numItems, int[] itemLocation, String[] itemKeyword,
+                        String[] itemName, String[] itemDescription, boolean[] itemGetable )
+    {
+        this.numRooms = numRooms;
+        this.zones = zones;
+        this.roomExits = new int[ numRooms*6 ];
+        System.arraycopy( roomExits, 0, this.roomExits, 0, numRooms*6 );
+        this.numItems = numItems;
+        this.itemLocation = new int[ numItems ];
+        System.arraycopy( itemLocation, 0, this.itemLocation, 0, numItems );
+        // Nothing below may index by an exit or item room that isn't
+        // there, and the tables may have come from a file nobody checked.
+        validation = MapValidator.validate( numRooms, this.roomExits, numItems, this.itemLocation );
+        if ( validation.hasErrors() ) {
+            throw new IllegalArgumentException( (String)validation.errors.elementAt(0) );
+        }
+        items = new Item[ numItems ];
+
+        // We want to build Location objects from this stuff.
+        Location[] tempLocation = new Location[numRooms];
+        for ( int i=0; i<numRooms; i++ ) {
+            tempLocation[i] = new Location( i, roomNames[i], roomDescs[i] );
+            int zone = zones.getZone( i );
+            tempLocation[i].setZone( zone, zones.getSound(zone) );
+        }
+        // Now we do the same with all the exits.
+        for ( int i=0; i<numRooms; i++ ) {
+            // Loop through each exit direction.
+            for ( int j=0; j<6; j++ ) {
+                if ( roomExits[i*6+j]!=0 ) { // If this is an exit,
+                    tempLocation[i].addExit( new Exit(j+1, tempLocation[roomExits[i*6+j]]) );
+                }
+            }
+        }
+        // Create new item objects...
+        for ( int i=0; i<numItems; i++ ) {
+            if ( itemLocation[i]==0 ) { // Player inventory
+                items[i] = new Item( itemKeyword[i], itemName[i], itemDescription[i] );
+                inventory.add( items[i] );
+            } else { // In a location.
+                items[i] = new Item( itemKeyword[i], itemName[i], itemDescription[i],
+                                     itemGetable[i] );
+                tempLocation[itemLocation[i]].addItem( items[i] );
+            }
+            items[i].setIndex( i );
+        }
+        locations = tempLocation;
+        startLocation = numRooms>1 ? tempLocation[1] : null;
+        routes = new Routes( this, this.roomExits );
+    }
+
+    // Return the number of rooms (including the unused room 0).
+    public int getNumLocations()
+    {
+        return locations.length;
+    }
+    // Return a room by its room number.
+    public Location getLocation( int index )
+    {
+        return locations[index];
+    }
+    // Return where a new game begins.
+    public Location getStartLocation()
+    {
+        return startLocation;
+    }
+    // Return the items a new player starts out holding (read-only).
+    public List getInventory()
+    {
+        return Collections.unmodifiableList( inventory );
+    }
+    // Return the routes between rooms (for GO TO).
+    public Routes getRoutes()
+    {
+        return routes;
+    }
+    // Did the map and items load?
+    public boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    // Table access, for tools that want the world as numbers.
+    // Return where an exit from a room leads (direction is Exit.NORTH..DOWN), 0 for nowhere.
+    public int getExitTarget( int room, int direction )
+    {
+        return roomExits[ room*6 + direction-1 ];
+    }
+    // Return the exit table itself, 6 per room (for MapValidator; don't change it).
+    int[] getExitTable()
+    {
+        return roomExits;
+    }
+    // Return the sound zones.
+    public SoundZones getSoundZones()
+    {
+        return zones;
+    }
+    // Return the number of items in the game.
+    public int getNumItems()
+    {
+        return numItems;
+    }
+    // Return an item by its number (its line in the item file).
+    public Item getItem( int index )
+    {
+        return items[index];
+    }
+    // Return the room an item starts in, 0 for the player's inventory.
+    public int getItemLocation( int index )
+    {
+        return itemLocation[index];
+    }
+}
@@ -0,0 +1,62 @@
+/*
+    How much garbage does a command make?  Runs each kind of command over
+    and over through GameEngine (with the output buffer reused) and reports
+    the bytes allocated per command, then compares the old way of reading
+    a room's exits and items (a Vector clone per call) with the read-only
+    views handed out now.
+
+    Run from the java/ directory so the map and item files are found.
+*/
+
+import java.io.File;
+import java.util.List;
+import java.util.Vector;
+
+public class AllocationBenchmark {
+    // Time one command, run over and over in the same session.
+    static void command( final GameEngine engine, final GameSession session,
+                         final String[] lines, String name ) {
+        final StringBuffer out = new StringBuffer( 4096 );
+        Bench.run( name, new Bench.Task() {
+            public long run( int i ) {
+                out.setLength( 0 );
+                engine.textEntered( session, lines[i%lines.length], out );
+                return out.length();
+            }
+        }, 100000 );
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        final GameEngine engine = new GameEngine();
+        final GameSession session = new GameSession( new File(".").toURI().toURL() );
+        // Stand in the Conservatory (flowers, coffin, raven).
+        StringBuffer out = new StringBuffer();
+        String[] walk = { "n", "n", "n", "n", "e", "u", "w" };
+        for ( int i=0; i<walk.length; i++ ) engine.textEntered( session, walk[i], out );
+
+        command( engine, session, new String[] { "look" }, "look" );
+        command( engine, session, new String[] { "e", "w" }, "go (there and back)" );
+        command( engine, session, new String[] { "examine raven" }, "examine" );
+        command( engine, session, new String[] { "i" }, "inventory" );
+        command( engine, session, new String[] { "get flowers", "drop flowers" }, "get/drop" );
+        command( engine, session, new String[] { "get all", "drop all" }, "get all/drop all" );
+
+        final Location here = session.getLocation();
+        final Vector exits = new Vector( here.getExits() );
+        final Vector items = new Vector( session.getPlayer().getItems(here) );
+        Bench.run( "exits+items as Vector clones (old)", new Bench.Task() {
+            public long run( int i ) {
+                Vector e = (Vector)exits.clone();
+                Vector t = (Vector)items.clone();
+                return e.size()+t.size();
+            }
+        }, 1000000 );
+        Bench.run( "exits+items as read-only views", new Bench.Task() {
+            public long run( int i ) {
+                List e = here.getExits();
+                List t = session.getPlayer().getItems( here );
+                return e.size()+t.size();
+            }
+        }, 1000000 );
+    }
+}
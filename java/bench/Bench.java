@@ -0,0 +1,91 @@
+/*
+    Bare bones timing helpers for the benchmarks in this directory.  Each
+    benchmark is a Bench.Task; run() warms it up, then times a number of
+    batches and reports the best and average nanoseconds per operation,
+    plus how many bytes the calling thread allocated per operation.  The
+    numbers come back as a Bench.Result too, so a run can be saved and
+    compared with a later one (see HotPathBenchmark).  It is no
+    substitute for JMH: there are no forks, and nothing beyond a volatile
+    sink stops the JIT optimizing the work away.
+
+    Compile and run from the java/ directory, for example:
+        javac -d /tmp/hm *.java bench/*.java
+        java -cp /tmp/hm DispatchBenchmark
+*/
+
+import java.lang.management.ManagementFactory;
+
+public class Bench {
+    // Anything the timed code produces gets folded in here, so the JIT
+    // cannot decide the work is unused and throw it away.
+    public static volatile long sink;
+
+    // One benchmark: do a single operation and return something from it.
+    public interface Task {
+        public long run( int i );
+    }
+
+    // What one benchmark measured, per operation.
+    public static class Result {
+        public String	name;
+        public double	best;		// Nanoseconds, fastest batch.
+        public double	average;	// Nanoseconds, all batches.
+        public double	bytes;		// Allocated (-1 if unknown).
+
+        public Result( String name, double best, double average, double bytes ) {
+            this.name = name;
+            this.best = best;
+            this.average = average;
+            this.bytes = bytes;
+        }
+    }
+
+    // Time ops operations of task, after warming it up.
+    public static Result run( String name, Task task, int ops ) {
+        long result = 0;
+        for ( int round=0; round<5; round++ ) {	// Warm up.
+            for ( int i=0; i<ops; i++ ) result += task.run( i );
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        int batches = 10;
+        long allocated = allocatedBytes();
+        for ( int round=0; round<batches; round++ ) {
+            long start = System.nanoTime();
+            for ( int i=0; i<ops; i++ ) result += task.run( i );
+            long time = System.nanoTime()-start;
+            if ( time<best ) best = time;
+            total += time;
+        }
+        allocated = allocatedBytes()-allocated;
+        sink += result;
+        Result r = new Result( name, (double)best/ops, (double)total/batches/ops,
+                               allocated<0 ? -1 : (double)allocated/batches/ops );
+        System.out.println( pad(name, 40)
+            +pad( format(r.best), 10 )+" ns/op best, "
+            +pad( format(r.average), 10 )+" ns/op avg, "
+            +pad( format(r.bytes), 10 )+" B/op" );
+        return r;
+    }
+
+    // Bytes allocated so far by the current thread (-1 if the JVM can't say).
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if ( bean instanceof com.sun.management.ThreadMXBean ) {
+            return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(
+                Thread.currentThread().getId() );
+        }
+        return -1;
+    }
+
+    static String format( double value ) {
+        if ( value>=1000000 ) return String.valueOf( Math.round(value) );
+        return String.valueOf( Math.round(value*10)/10.0 );
+    }
+
+    static String pad( String s, int width ) {
+        StringBuffer buf = new StringBuffer( s );
+        while ( buf.length()<width ) buf.append( ' ' );
+        return buf.toString();
+    }
+}
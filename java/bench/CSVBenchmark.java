@@ -0,0 +1,64 @@
+/*
+    Reading a big map file: the old line-at-a-time CSVTokenizer (a
+    StringBuffer and String per field, Integer.parseInt for the exits)
+    against CSVReader.  Both read the same generated hm_map.csv from
+    memory, so only the parsing is timed.
+*/
+
+import java.io.*;
+
+public class CSVBenchmark {
+    public static void main( String[] argv ) throws IOException {
+        int rooms = argv.length>0 ? Integer.parseInt(argv[0]) : 20000;
+        File dir = File.createTempFile( "csvbench", "" );
+        dir.delete();
+        new MapGenerator( rooms ).writeFiles( dir );
+        File mapFile = new File( dir, "hm_map.csv" );
+        final char[] text = new char[ (int)mapFile.length() ];
+        Reader file = new FileReader( mapFile );
+        int length = 0, n;
+        while ( (n = file.read(text, length, text.length-length))>0 ) length += n;
+        file.close();
+        new File( dir, "hm_map.csv" ).delete();
+        new File( dir, "hm_items.csv" ).delete();
+        new File( dir, SoundZones.FILE_NAME ).delete();
+        dir.delete();
+        final int size = length;
+        System.out.println( rooms+" rooms, "+size+" chars of CSV" );
+
+        Bench.run( "CSVTokenizer per line", new Bench.Task() {
+            public long run( int i ) {
+                try {
+                    BufferedReader in = new BufferedReader( new CharArrayReader(text, 0, size) );
+                    long total = 0;
+                    String line;
+                    while ( (line = in.readLine())!=null ) {
+                        CSVTokenizer csvt = new CSVTokenizer( line );
+                        for ( int j=0; j<6; j++ ) total += Integer.parseInt( csvt.nextToken() );
+                        total += csvt.nextToken().length();
+                        total += csvt.nextToken().length();
+                    }
+                    return total;
+                } catch (IOException e) {
+                    throw new RuntimeException( e.toString() );
+                }
+            }
+        }, 5 );
+        Bench.run( "CSVReader", new Bench.Task() {
+            public long run( int i ) {
+                try {
+                    CSVReader csv = new CSVReader( new CharArrayReader(text, 0, size) );
+                    long total = 0;
+                    while ( csv.nextRecord() ) {
+                        for ( int j=0; j<6; j++ ) total += csv.nextInt();
+                        total += csv.nextInterned().length();
+                        total += csv.nextString().length();
+                    }
+                    return total;
+                } catch (IOException e) {
+                    throw new RuntimeException( e.toString() );
+                }
+            }
+        }, 5 );
+    }
+}
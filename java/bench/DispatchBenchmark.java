@@ -0,0 +1,51 @@
+/*
+    How long does it take to work out which verb a command is?  Compares
+    the old if/else chain of equalsIgnoreCase() calls (copied here from
+    the way Adventure.textEntered() used to do it) with the VerbTable
+    lookup GameEngine uses now.  Only the dispatch is timed, not the
+    command itself.
+*/
+public class DispatchBenchmark {
+    // A typical mix of what players type.
+    static final String[] COMMANDS = {
+        "n", "s", "e", "w", "u", "d", "look", "l", "i", "inventory",
+        "get", "take", "drop", "examine", "go", "verbose", "xyzzy"
+    };
+
+    // The old way: alias checks, then the verb chain.  Returns a verb number.
+    static int chain( String verb ) {
+        if ( verb.equalsIgnoreCase("N") ) { verb="GO"; };
+        if ( verb.equalsIgnoreCase("S") ) { verb="GO"; };
+        if ( verb.equalsIgnoreCase("W") ) { verb="GO"; };
+        if ( verb.equalsIgnoreCase("E") ) { verb="GO"; };
+        if ( verb.equalsIgnoreCase("U") ) { verb="GO"; };
+        if ( verb.equalsIgnoreCase("D") ) { verb="GO"; };
+        if ( verb.equalsIgnoreCase("I") ) { verb="INVENTORY"; };
+        if ( verb.equalsIgnoreCase("L") ) { verb="LOOK"; };
+
+        if ( verb.equalsIgnoreCase("GO") ) return 1;
+        else if ( verb.equalsIgnoreCase("INVENTORY") ) return 2;
+        else if ( verb.equalsIgnoreCase("GET") || verb.equalsIgnoreCase("TAKE") ) return 3;
+        else if ( verb.equalsIgnoreCase("DROP") ) return 4;
+        else if ( verb.equalsIgnoreCase("VERBOSE") ) return 5;
+        else if ( verb.equalsIgnoreCase("LOOK") || verb.equalsIgnoreCase("EXAMINE") ) return 6;
+        return 0;
+    }
+
+    public static void main( String[] argv ) {
+        final VerbTable table = new GameEngine().getVerbs();
+        final int n = COMMANDS.length;
+
+        Bench.run( "if/else equalsIgnoreCase chain", new Bench.Task() {
+            public long run( int i ) {
+                return chain( COMMANDS[i%n] );
+            }
+        }, 1000000 );
+        Bench.run( "VerbTable lookup", new Bench.Task() {
+            public long run( int i ) {
+                VerbTable.Entry entry = table.lookup( COMMANDS[i%n] );
+                return entry==null ? 0 : entry.hashCode();
+            }
+        }, 1000000 );
+    }
+}
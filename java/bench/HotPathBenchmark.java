@@ -0,0 +1,302 @@
+/*
+    The benchmarks to run before and after changing anything on the
+    command path.  One run times, on the stock map and on generated ones:
+
+    - splitting up a command (CommandTokenizer),
+    - finding its verb (VerbTable) and running it through GameEngine,
+    - GO: resolving an exit and moving,
+    - Routes: the next step towards a room, and TRAVEL all the way there,
+    - showLocation(): describing a room,
+    - GET ALL / DROP ALL in a room piled with items,
+    - SaveGame: saving and restoring a game,
+    - loading the world from CSV and from a snapshot, and checking it
+      (MapValidator),
+
+    each with the bytes allocated per operation.  The numbers can be saved
+    and a later run compared against them; anything slower or allocating
+    more than the saved run by more than the tolerance is reported, and
+    the exit status is 1, so a script can catch regressions.
+
+        java HotPathBenchmark [-save file] [-compare file] [-tolerance percent]
+
+    Run from the java/ directory so the stock map and item files are found.
+    Timings are noisy; compare runs made on the same machine, and rerun
+    anything that is flagged before believing it.
+
+    This is not a JMH suite, and there is no Maven or Gradle build for
+    one.  Everything runs in a single JVM, one benchmark after another,
+    with warm-up batches but no forks, so what the JIT learned from one
+    benchmark can colour the next.  A volatile sum is the only guard
+    against dead code elimination.  Bytes per operation come from the
+    thread's allocation counter over whole batches, not from -prof gc.
+    It is a quick check for regressions between two runs on one machine.
+    Numbers to quote need a proper JMH harness with forks and -prof gc.
+*/
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Hashtable;
+import java.util.Vector;
+
+public class HotPathBenchmark {
+    static final int TOLERANCE = 20;	// Percent slower before it counts.
+    static final double BYTES_SLACK = 16;	// Allocation noise (bytes/op).
+
+    private static final PrintStream out = System.out;
+    private static Vector results = new Vector();	// Of Bench.Result.
+
+    static void run( String name, Bench.Task task, int ops ) {
+        results.add( Bench.run(name, task, ops) );
+    }
+
+    // Run one command line over and over in a session.
+    static void command( final GameEngine engine, final GameSession session,
+                         final String[] lines, String name, int ops ) {
+        final StringBuffer buf = new StringBuffer( 8192 );
+        run( name, new Bench.Task() {
+            public long run( int i ) {
+                buf.setLength( 0 );
+                engine.textEntered( session, lines[i%lines.length], buf );
+                return buf.length();
+            }
+        }, ops );
+    }
+
+    static void showLocation( final GameEngine engine, final GameSession session, String name ) {
+        final StringBuffer buf = new StringBuffer( 8192 );
+        run( name, new Bench.Task() {
+            public long run( int i ) {
+                buf.setLength( 0 );
+                engine.showLocation( session, buf );
+                return buf.length();
+            }
+        }, 100000 );
+    }
+
+    // Ask for the next step between random rooms, towards one of destinations rooms.
+    static void routes( WorldTemplate world, String name, int destinations ) {
+        final Routes routes = world.getRoutes();
+        final int[] from = new int[ 4096 ], to = new int[ 4096 ];
+        java.util.Random random = new java.util.Random( 1 );
+        int rooms = world.getNumLocations();
+        for ( int i=0; i<from.length; i++ ) {
+            from[i] = 1+random.nextInt( rooms-1 );
+            to[i] = 1+(random.nextInt( destinations )*(rooms-1)/destinations);
+        }
+        run( name, new Bench.Task() {
+            public long run( int i ) {
+                return routes.nextStep( from[i&4095], to[i&4095] );
+            }
+        }, 1000000 );
+    }
+
+    static void validate( final WorldTemplate world, String name, int checks ) {
+        run( name, new Bench.Task() {
+            public long run( int i ) {
+                return MapValidator.validate( world ).components;
+            }
+        }, checks );
+    }
+
+    static void load( String name, final URL docBase, int loads ) {
+        run( name+" from CSV", new Bench.Task() {
+            public long run( int i ) {
+                System.setOut( WorldLoadBenchmark.quiet );
+                try {
+                    return new WorldTemplate( docBase ).getNumLocations();
+                } finally {
+                    System.setOut( out );
+                }
+            }
+        }, loads );
+        final File snapshot;
+        try {
+            snapshot = new File( new File(docBase.toURI()), WorldSnapshot.FILE_NAME );
+            System.setOut( WorldLoadBenchmark.quiet );
+            WorldTemplate world = new WorldTemplate( docBase );
+            System.setOut( out );
+            WorldLoadBenchmark.writeSnapshot( world, snapshot.getParentFile() );
+        } catch (Exception e) {
+            System.setOut( out );
+            out.println( Bench.pad(name+" from snapshot", 40)+"n/a ("+e+")" );
+            return;
+        }
+        run( name+" from snapshot", new Bench.Task() {
+            public long run( int i ) {
+                try {
+                    return WorldSnapshot.load( snapshot ).getNumLocations();
+                } catch (IOException e) {
+                    throw new RuntimeException( e.toString() );
+                }
+            }
+        }, loads );
+    }
+
+    static GameSession session( WorldTemplate world ) {
+        return new GameSession( new CreateWorld(world) );
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        String save = null, compare = null;
+        int tolerance = TOLERANCE;
+        for ( int i=0; i+1<argv.length; i+=2 ) {
+            if ( argv[i].equals("-save") ) save = argv[i+1];
+            else if ( argv[i].equals("-compare") ) compare = argv[i+1];
+            else if ( argv[i].equals("-tolerance") ) tolerance = Integer.parseInt( argv[i+1] );
+        }
+
+        final GameEngine engine = new GameEngine();
+        System.setOut( WorldLoadBenchmark.quiet );
+        WorldTemplate stock = new WorldTemplate( new File(".").toURI().toURL() );
+        System.setOut( out );
+        if ( !stock.isLoaded() ) {
+            out.println( "Run this from the directory with hm_map.csv and hm_items.csv." );
+            System.exit( 2 );
+        }
+        WorldTemplate big = new MapGenerator( 10000 ).toTemplate();
+        WorldTemplate crowded = new MapGenerator( 100, 200 ).toTemplate();
+
+        // Parsing and dispatch.
+        final CommandTokenizer tokenizer = new CommandTokenizer();
+        final String[] lines = ParseBenchmark.COMMANDS;
+        run( "parse (CommandTokenizer)", new Bench.Task() {
+            public long run( int i ) {
+                tokenizer.tokenize( lines[i%lines.length] );
+                return tokenizer.getVerbEnd();
+            }
+        }, 1000000 );
+        final VerbTable verbs = engine.getVerbs();
+        final String[] words = DispatchBenchmark.COMMANDS;
+        run( "dispatch (VerbTable)", new Bench.Task() {
+            public long run( int i ) {
+                VerbTable.Entry entry = verbs.lookup( words[i%words.length] );
+                return entry==null ? 0 : 1;
+            }
+        }, 1000000 );
+        command( engine, session(stock), new String[] { "xyzzy" }, "textEntered, unknown verb", 1000000 );
+        command( engine, session(stock), new String[] { "i" }, "textEntered, inventory", 1000000 );
+
+        // Movement and looking.  Step off the crowded room 1 of the generated maps first.
+        GameSession walker = session( stock );
+        StringBuffer scratch = new StringBuffer();
+        engine.textEntered( walker, "n", scratch );
+        command( engine, walker, new String[] { "n", "s" }, "GO, stock map", 100000 );
+        GameSession roamer = session( big );
+        engine.textEntered( roamer, "e", scratch );
+        command( engine, roamer, new String[] { "n", "e", "s", "w" }, "GO, 10000 rooms", 100000 );
+        showLocation( engine, walker, "showLocation, stock map" );
+        showLocation( engine, roamer, "showLocation, 10000 rooms" );
+        GameSession crowd = session( crowded );
+        showLocation( engine, crowd, "showLocation, 200 items" );
+
+        // Routing.  The big map's 32 destinations all fit in the tree cache.
+        routes( stock, "Routes.nextStep, stock map", 53 );
+        routes( big, "Routes.nextStep, 10000 rooms", 32 );
+        command( engine, session(stock), new String[] { "travel attic", "travel foyer" }, "TRAVEL, stock map", 100000 );
+
+        // Item-heavy room.
+        command( engine, crowd, new String[] { "get all", "drop all" }, "GET ALL/DROP ALL, 200 items", 2000 );
+
+        // Saving and restoring, mid-game.
+        final GameSession saver = session( stock );
+        for ( int i=0; i<LoadGenerator.WALKTHROUGH.length; i++ ) {
+            engine.textEntered( saver, LoadGenerator.WALKTHROUGH[i], scratch );
+        }
+        final ByteBuffer saved = ByteBuffer.allocate( SaveGame.maxSize(stock) );
+        run( "SaveGame.write", new Bench.Task() {
+            public long run( int i ) {
+                saved.clear();
+                SaveGame.write( saver, saved );
+                return saved.position();
+            }
+        }, 1000000 );
+        run( "SaveGame.read", new Bench.Task() {
+            public long run( int i ) {
+                saved.rewind();
+                try {
+                    SaveGame.read( saver, saved );
+                } catch (IOException e) {
+                    throw new RuntimeException( e.toString() );
+                }
+                return saved.position();
+            }
+        }, 100000 );
+        out.println( Bench.pad("", 40)+"saved game is "+saved.position()+" bytes" );
+
+        // Map checks.
+        validate( big, "MapValidator, 10000 rooms", 100 );
+        validate( new MapGenerator( 100000 ).toTemplate(), "MapValidator, 100000 rooms", 10 );
+
+        // World loading.
+        File scratchDir = File.createTempFile( "hotpath", "" );
+        scratchDir.delete();
+        try {
+            File stockDir = new File( scratchDir, "stock" );
+            stockDir.mkdirs();
+            WorldLoadBenchmark.copy( new File("hm_map.csv"), new File(stockDir, "hm_map.csv") );
+            WorldLoadBenchmark.copy( new File("hm_items.csv"), new File(stockDir, "hm_items.csv") );
+            WorldLoadBenchmark.copy( new File(SoundZones.FILE_NAME), new File(stockDir, SoundZones.FILE_NAME) );
+            load( "load stock map", stockDir.toURI().toURL(), 200 );
+            WorldLoadBenchmark.delete( stockDir );
+            File bigDir = new File( scratchDir, "big" );
+            new MapGenerator( 10000 ).writeFiles( bigDir );
+            load( "load 10000 rooms", bigDir.toURI().toURL(), 10 );
+            WorldLoadBenchmark.delete( bigDir );
+        } finally {
+            scratchDir.delete();
+        }
+
+        if ( save!=null ) {
+            save( new File(save) );
+            out.println( "Saved "+results.size()+" results to "+save );
+        }
+        if ( compare!=null && compare(new File(compare), tolerance)>0 ) System.exit( 1 );
+    }
+
+    // Write the results out as tab separated lines: name, best, average, bytes.
+    static void save( File file ) throws IOException {
+        PrintWriter w = new PrintWriter( new BufferedWriter(new FileWriter(file)) );
+        for ( int i=0; i<results.size(); i++ ) {
+            Bench.Result r = (Bench.Result)results.elementAt( i );
+            w.println( r.name+"\t"+r.best+"\t"+r.average+"\t"+r.bytes );
+        }
+        w.close();
+    }
+
+    // Compare this run with a saved one and return how many got worse.
+    static int compare( File file, int tolerance ) throws IOException {
+        Hashtable saved = new Hashtable();
+        BufferedReader in = new BufferedReader( new FileReader(file) );
+        String line;
+        while ( (line = in.readLine())!=null ) {
+            String[] fields = line.split( "\t" );
+            if ( fields.length<4 ) continue;
+            saved.put( fields[0], new Bench.Result(fields[0], Double.parseDouble(fields[1]),
+                Double.parseDouble(fields[2]), Double.parseDouble(fields[3])) );
+        }
+        in.close();
+
+        out.println();
+        out.println( "Compared with "+file+" (tolerance "+tolerance+"%):" );
+        int worse = 0;
+        for ( int i=0; i<results.size(); i++ ) {
+            Bench.Result now = (Bench.Result)results.elementAt( i );
+            Bench.Result then = (Bench.Result)saved.get( now.name );
+            if ( then==null ) {
+                out.println( Bench.pad(now.name, 40)+"new" );
+                continue;
+            }
+            double change = then.best>0 ? (now.best-then.best)*100/then.best : 0;
+            boolean slower = change>tolerance;
+            boolean fatter = now.bytes>then.bytes+BYTES_SLACK && now.bytes>then.bytes*(100+tolerance)/100;
+            if ( slower || fatter ) worse++;
+            out.println( Bench.pad(now.name, 40)
+                +Bench.pad( (change>=0 ? "+" : "")+Bench.format(change)+"%", 10 )
+                +Bench.pad( Bench.format(then.bytes)+" -> "+Bench.format(now.bytes)+" B/op", 28 )
+                +(slower ? " SLOWER" : "")+(fatter ? " ALLOCATES MORE" : "") );
+        }
+        out.println( worse==0 ? "No regressions." : worse+" regression(s)." );
+        return worse;
+    }
+}
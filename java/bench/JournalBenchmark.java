@@ -0,0 +1,99 @@
+/*
+    What does SessionJournal cost?  Times a command run straight through
+    GameEngine against the same command run through SessionJournal.play()
+    (appended, written and forced by the flusher in batches), then plays
+    a number of games and times recovering them, first from the journal
+    alone and then from a snapshot.
+
+        java JournalBenchmark [games] [commands per game]
+
+    Run from the java/ directory so the stock map and item files are found.
+    The journal goes in a temporary directory that is deleted afterwards.
+*/
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Random;
+
+public class JournalBenchmark {
+    static final String[] MOVES = { "n", "s", "e", "w", "u", "d", "get all", "drop all", "look", "i" };
+
+    static void delete( File dir ) {
+        File[] files = dir.listFiles();
+        for ( int i=0; files!=null && i<files.length; i++ ) files[i].delete();
+        dir.delete();
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        int games = argv.length>0 ? Integer.parseInt(argv[0]) : 10000;
+        int commands = argv.length>1 ? Integer.parseInt(argv[1]) : 50;
+        PrintStream out = System.out;
+        final GameEngine engine = new GameEngine();
+        System.setOut( WorldLoadBenchmark.quiet );
+        final WorldTemplate world = WorldTemplate.get( new File(".").toURI().toURL() );
+        System.setOut( out );
+        if ( !world.isLoaded() ) {
+            out.println( "Run this from the directory with hm_map.csv and hm_items.csv." );
+            return;
+        }
+        File dir = File.createTempFile( "journal", "" );
+        dir.delete();
+        try {
+            // Cost per command.
+            final SessionJournal journal = new SessionJournal( dir, world, engine, true, 0 );
+            final GameSession plain = new GameSession( new CreateWorld(world) );
+            final SessionJournal.Player player = journal.open();
+            final StringBuffer buf = new StringBuffer( 4096 );
+            Bench.run( "GameEngine.textEntered", new Bench.Task() {
+                public long run( int i ) {
+                    buf.setLength( 0 );
+                    engine.textEntered( plain, MOVES[i%MOVES.length], buf );
+                    return buf.length();
+                }
+            }, 100000 );
+            Bench.run( "SessionJournal.play (forced batches)", new Bench.Task() {
+                public long run( int i ) {
+                    buf.setLength( 0 );
+                    return journal.play( player, MOVES[i%MOVES.length], buf );
+                }
+            }, 100000 );
+            journal.close( player );
+
+            // Recovery.
+            out.println( "Playing "+games+" games of "+commands+" commands..." );
+            Random random = new Random( 1 );
+            SessionJournal.Player[] players = new SessionJournal.Player[ games ];
+            for ( int i=0; i<games; i++ ) players[i] = journal.open();
+            long last = 0;
+            for ( int c=0; c<commands; c++ ) {
+                for ( int i=0; i<games; i++ ) {
+                    buf.setLength( 0 );
+                    last = journal.play( players[i], MOVES[random.nextInt(MOVES.length)], buf );
+                }
+            }
+            journal.awaitDurable( last );
+            journal.close();
+            long size = 0;
+            File[] files = dir.listFiles();
+            for ( int i=0; i<files.length; i++ ) size += files[i].length();
+
+            System.setOut( WorldLoadBenchmark.quiet );
+            long start = System.nanoTime();
+            SessionJournal recovered = new SessionJournal( dir, world, engine, true, 0 );
+            long replayed = System.nanoTime()-start;
+            recovered.snapshot();
+            recovered.close();
+            start = System.nanoTime();
+            SessionJournal fromSnapshot = new SessionJournal( dir, world, engine, true, 0 );
+            long restored = System.nanoTime()-start;
+            fromSnapshot.close();
+            System.setOut( out );
+            out.println( "Recovered "+recovered.getPlayers().size()+" games from "+size/1024+"K of journal in "
+                         +replayed/1000000+"ms ("+Runtime.getRuntime().availableProcessors()+" processors)" );
+            out.println( "Recovered "+fromSnapshot.getPlayers().size()+" games from "
+                         +new File(dir, SessionJournal.SNAPSHOT).length()/1024+"K snapshot in "+restored/1000000+"ms" );
+        } finally {
+            delete( dir );
+        }
+    }
+}
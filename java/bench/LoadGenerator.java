@@ -0,0 +1,291 @@
+/*
+    How many players can one machine take?  Plays many headless games at
+    once through a single GameEngine and measures every command: the
+    throughput, and the latency percentiles (p50/p99/p99.9/max) for each
+    verb, using a LatencyHistogram per verb per thread.
+
+    Each simulated player follows a script, and the players are shared
+    out round robin among the threads, which take turns running one
+    command for each of their players.  The scripts are:
+
+        walk     the stock walkthrough (37 commands, a new game after each)
+        random   a random walk through the exits, looking around now and then
+        storm    GET ALL / DROP ALL over and over
+        file     any other name is read as a transcript, one command a line
+                 (blank lines and lines starting with # are skipped)
+
+    and a comma separated list gives each in turn to successive players.
+
+        java LoadGenerator [-sessions 100] [-threads cores] [-seconds 10]
+                           [-warmup 3] [-script walk,random,storm]
+                           [-rooms n [-crowd n]] [-rate commands/s] [-think 5]
+
+    By default each thread runs flat out (a closed loop), which shows the
+    most the engine can do.  With -rate the threads send commands on a
+    fixed schedule instead, and latency is counted from when a command was
+    due rather than when it was sent, so a stall shows up in the tail as
+    it would for players (no coordinated omission).  -rooms plays on a
+    generated map instead of the stock one, with -crowd extra items in the
+    start room (for storms).  -think is how often a player is supposed to
+    type, used to turn throughput into players per core.
+
+    Run from the java/ directory so the stock map and item files are found.
+*/
+
+import java.io.*;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadGenerator {
+    static final String[] WALKTHROUGH = {
+        "get paper", "i", "n", "n", "n", "n", "e", "e", "look", "s", "w", "get book",
+        "examine book", "look book", "e", "drop book", "look", "get all", "n", "e", "e", "e",
+        "n", "get all", "inventory", "drop all", "l", "go north", "go n", "take chicken",
+        "s", "s", "u", "verbose off", "verbose on", "d", "frobnicate the thing"
+    };
+    static final String[] STORM = { "get all", "drop all" };
+    static final String[] VERBS = { "GO", "LOOK", "GET", "DROP", "INVENTORY", "VERBOSE" };
+    static final String UNKNOWN = "(unknown)";
+
+    GameEngine		engine = new GameEngine();
+    WorldTemplate	world;
+    String[]		verbNames;	// Histogram labels, by verb number.
+    Hashtable		verbNumbers = new Hashtable();	// Verb handler -> Integer.
+    volatile boolean	recording = false;
+    volatile boolean	stopped = false;
+    long		interval;	// Nanoseconds between a thread's commands (0 = flat out).
+
+    LoadGenerator( WorldTemplate world ) {
+        this.world = world;
+        verbNames = new String[ VERBS.length+1 ];
+        for ( int i=0; i<VERBS.length; i++ ) {
+            verbNames[i] = VERBS[i];
+            verbNumbers.put( engine.getVerbs().lookup(VERBS[i]).getVerb(), Integer.valueOf(i) );
+        }
+        verbNames[ VERBS.length ] = UNKNOWN;
+    }
+
+    // Return the verb number a command line counts under.
+    int verbOf( String line ) {
+        String word = line.trim();
+        int space = word.indexOf( ' ' );
+        if ( space>=0 ) word = word.substring( 0, space );
+        VerbTable.Entry entry = engine.getVerbs().lookup( word );
+        Integer number = entry==null ? null : (Integer)verbNumbers.get( entry.getVerb() );
+        return number==null ? VERBS.length : number.intValue();
+    }
+
+    // One simulated player.
+    class Player {
+        GameSession	session;
+        String[]	script;		// Null for a random walk.
+        int[]		verbs;		// Verb number of each script line.
+        int		at = 0;
+
+        Player( String[] script ) {
+            this.script = script;
+            session = newGame();
+            if ( script!=null ) {
+                verbs = new int[ script.length ];
+                for ( int i=0; i<script.length; i++ ) verbs[i] = verbOf( script[i] );
+            }
+        }
+    }
+
+    GameSession newGame() {
+        return new GameSession( new CreateWorld(world) );
+    }
+
+    // One load thread: its players, and a histogram per verb.
+    class Worker extends Thread {
+        Vector			players = new Vector();
+        LatencyHistogram[]	latency = new LatencyHistogram[ verbNames.length ];
+        Random			random;
+        StringBuffer		out = new StringBuffer( 8192 );
+        int			go = verbOf( "n" ), look = verbOf( "look" );
+
+        Worker( int number ) {
+            super( "LoadGenerator "+number );
+            random = new Random( number );
+            for ( int i=0; i<latency.length; i++ ) latency[i] = new LatencyHistogram();
+        }
+
+        public void run() {
+            long due = System.nanoTime();
+            while ( !stopped ) {
+                for ( int i=0; i<players.size() && !stopped; i++ ) {
+                    Player player = (Player)players.elementAt( i );
+                    String line;
+                    int verb;
+                    if ( player.script==null ) {
+                        line = randomStep( player.session );
+                        verb = line.equals("look") ? look : go;
+                    } else {
+                        if ( player.at==player.script.length ) {
+                            player.at = 0;
+                            if ( player.script!=STORM ) player.session = newGame();
+                        }
+                        verb = player.verbs[ player.at ];
+                        line = player.script[ player.at++ ];
+                    }
+
+                    long start = System.nanoTime();
+                    long from = start;
+                    if ( interval>0 ) {
+                        from = due;
+                        due += interval;
+                        if ( from>start ) {
+                            LockSupport.parkNanos( from-start );
+                            start = System.nanoTime();
+                        }
+                    }
+                    out.setLength( 0 );
+                    engine.textEntered( player.session, line, out );
+                    long end = System.nanoTime();
+                    if ( recording ) latency[verb].record( end-Math.min(from, start) );
+                }
+            }
+        }
+
+        // Pick a way out of the player's room (or just look around).
+        String randomStep( GameSession session ) {
+            Location here = session.getLocation();
+            if ( random.nextInt(8)==0 ) return "look";
+            int exits = 0;
+            for ( int d=Exit.NORTH; d<=Exit.DOWN; d++ ) {
+                if ( here.getExit(d)!=null ) exits++;
+            }
+            if ( exits==0 ) return "look";
+            int pick = random.nextInt( exits );
+            for ( int d=Exit.NORTH; d<=Exit.DOWN; d++ ) {
+                if ( here.getExit(d)!=null && pick--==0 ) return Exit.shortDirName[d];
+            }
+            return "look";
+        }
+    }
+
+    // Read a transcript: one command a line, skipping blanks and # comments.
+    static String[] readScript( String fileName ) throws IOException {
+        Vector lines = new Vector();
+        BufferedReader in = new BufferedReader( new FileReader(fileName) );
+        String line;
+        while ( (line = in.readLine())!=null ) {
+            line = line.trim();
+            if ( line.length()>0 && !line.startsWith("#") ) lines.add( line );
+        }
+        in.close();
+        if ( lines.isEmpty() ) throw new IOException( fileName+" has no commands" );
+        return (String[])lines.toArray( new String[lines.size()] );
+    }
+
+    static String[] script( String name ) throws IOException {
+        if ( name.equals("walk") ) return WALKTHROUGH;
+        if ( name.equals("storm") ) return STORM;
+        if ( name.equals("random") ) return null;
+        return readScript( name );
+    }
+
+    static String micros( long nanos ) {
+        return Bench.format( nanos/1000.0 );
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        int sessions = 100;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = cores;
+        int seconds = 10, warmup = 3;
+        int rooms = 0, crowd = 0;
+        int rate = 0;
+        double think = 5;
+        String scripts = "walk,random,storm";
+        for ( int i=0; i+1<argv.length; i+=2 ) {
+            String option = argv[i], value = argv[i+1];
+            if ( option.equals("-sessions") ) sessions = Integer.parseInt( value );
+            else if ( option.equals("-threads") ) threads = Integer.parseInt( value );
+            else if ( option.equals("-seconds") ) seconds = Integer.parseInt( value );
+            else if ( option.equals("-warmup") ) warmup = Integer.parseInt( value );
+            else if ( option.equals("-script") ) scripts = value;
+            else if ( option.equals("-rooms") ) rooms = Integer.parseInt( value );
+            else if ( option.equals("-crowd") ) crowd = Integer.parseInt( value );
+            else if ( option.equals("-rate") ) rate = Integer.parseInt( value );
+            else if ( option.equals("-think") ) think = Double.parseDouble( value );
+            else {
+                System.out.println( "Unknown option "+option );
+                return;
+            }
+        }
+        threads = Math.max( 1, Math.min(threads, sessions) );
+
+        WorldTemplate world;
+        if ( rooms>0 ) {
+            world = new MapGenerator( rooms, crowd ).toTemplate();
+        } else {
+            PrintStream console = System.out;
+            System.setOut( WorldLoadBenchmark.quiet );
+            world = new WorldTemplate( new File(".").toURI().toURL() );
+            System.setOut( console );
+            if ( !world.isLoaded() ) {
+                System.out.println( "Run this from the directory with hm_map.csv and hm_items.csv, or use -rooms." );
+                return;
+            }
+        }
+
+        LoadGenerator load = new LoadGenerator( world );
+        if ( rate>0 ) load.interval = (long)threads*1000000000L/rate;
+        String[] names = scripts.split( "," );
+        String[][] scriptLines = new String[ names.length ][];
+        for ( int i=0; i<names.length; i++ ) scriptLines[i] = script( names[i] );
+        Worker[] workers = new Worker[ threads ];
+        for ( int i=0; i<threads; i++ ) workers[i] = load.new Worker( i );
+        for ( int i=0; i<sessions; i++ ) {
+            workers[i%threads].players.add( load.new Player(scriptLines[i%names.length]) );
+        }
+
+        System.out.println( sessions+" sessions ("+scripts+") on "+threads+" threads, "+cores+" cores, "
+            +world.getNumLocations()+" rooms, "
+            +(rate>0 ? rate+" commands/s" : "flat out") );
+        for ( int i=0; i<threads; i++ ) workers[i].start();
+        Thread.sleep( warmup*1000L );
+        load.recording = true;
+        long start = System.nanoTime();
+        Thread.sleep( seconds*1000L );
+        load.recording = false;
+        double elapsed = (System.nanoTime()-start)/1e9;
+        load.stopped = true;
+        for ( int i=0; i<threads; i++ ) workers[i].join();
+
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram[] byVerb = new LatencyHistogram[ load.verbNames.length ];
+        for ( int v=0; v<byVerb.length; v++ ) {
+            byVerb[v] = new LatencyHistogram();
+            for ( int i=0; i<threads; i++ ) byVerb[v].add( workers[i].latency[v] );
+            all.add( byVerb[v] );
+        }
+
+        double perSecond = all.getCount()/elapsed;
+        double perCore = perSecond/Math.min( threads, cores );
+        System.out.println( all.getCount()+" commands in "+Bench.format(elapsed)+"s: "
+            +Math.round(perSecond)+"/s, "+Math.round(perCore)+"/s per core" );
+        if ( rate>0 && perSecond<rate*0.95 ) {
+            System.out.println( "Couldn't keep up with "+rate+" commands/s; latencies include the backlog." );
+        }
+        System.out.println( "At one command every "+think+"s a player, one core keeps up with about "
+            +Math.round(perCore*think)+" players." );
+        System.out.println();
+        System.out.println( Bench.pad("verb", 12)+Bench.pad("count", 12)+Bench.pad("mean us", 10)
+            +Bench.pad("p50 us", 10)+Bench.pad("p99 us", 10)+Bench.pad("p99.9 us", 10)+"max us" );
+        for ( int v=0; v<=byVerb.length; v++ ) {
+            LatencyHistogram h = v<byVerb.length ? byVerb[v] : all;
+            if ( h.getCount()==0 ) continue;
+            System.out.println( Bench.pad(v<byVerb.length ? load.verbNames[v] : "all", 12)
+                +Bench.pad( String.valueOf(h.getCount()), 12 )
+                +Bench.pad( micros((long)h.getMean()), 10 )
+                +Bench.pad( micros(h.getValueAtPercentile(50)), 10 )
+                +Bench.pad( micros(h.getValueAtPercentile(99)), 10 )
+                +Bench.pad( micros(h.getValueAtPercentile(99.9)), 10 )
+                +micros( h.getMax() ) );
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+    Makes up big maps for the benchmarks: rooms laid out in a grid ten
+    wide with exits to their neighbours, a couple of hundred characters of
+    description each, an item in every tenth room and a sound zone for
+    every fifty rooms.  Optionally a crowd of extra items can be piled
+    into room 1, for timing commands like GET ALL in a busy room.  The result can be written as hm_map.csv/
+    hm_items.csv/hm_audio.json or made into a WorldTemplate directly.
+
+        java MapGenerator rooms [directory]
+
+    writes the files for a map of that many rooms into directory.
+*/
+
+import java.io.*;
+
+public class MapGenerator {
+    static final int WIDTH = 10;	// Rooms per row of the grid.
+
+    private static final String[] WORDS = { "dusty", "cold", "narrow", "dim", "panelled",
+        "cobwebbed", "silent", "long", "crooked", "damp", "gloomy", "tall" };
+
+    static final int ZONE_ROOMS = 50;	// Rooms per sound zone.
+    private static final String[] SOUNDS = { "foyer.au", "storm.au", "load.au", "ballroom.au",
+        "attic.au", "atticledge.au", "doors.au" };
+
+    int rooms;
+    int crowd;		// Extra items in room 1.
+
+    MapGenerator( int rooms ) {
+        this( rooms, 0 );
+    }
+    MapGenerator( int rooms, int crowd ) {
+        this.rooms = Math.max( rooms, 2 );
+        this.crowd = crowd;
+    }
+
+    String name( int room ) {
+        return room==0 ? "empty" : "Room "+room;
+    }
+    String description( int room ) {
+        if ( room==0 ) return "empty room";
+        StringBuffer buf = new StringBuffer( "You are in a " );
+        buf.append( WORDS[room%WORDS.length] ).append( ' ' ).append( WORDS[(room/7)%WORDS.length] );
+        buf.append( " room, number " ).append( room ).append( " of the generated wing." );
+        for ( int i=0; i<2+room%3; i++ ) {
+            buf.append( " The walls are " ).append( WORDS[(room+i)%WORDS.length] )
+               .append( " and the floor creaks underfoot." );
+        }
+        return buf.toString();
+    }
+    // Return where an exit leads (direction 0..5 for N,S,W,E,U,D), 0 for none.
+    int exit( int room, int direction ) {
+        if ( room==0 ) return 0;
+        int column = (room-1)%WIDTH;
+        switch ( direction ) {
+            case 0: return room+WIDTH<rooms ? room+WIDTH : 0;
+            case 1: return room-WIDTH>=1 ? room-WIDTH : 0;
+            case 2: return column>0 ? room-1 : 0;
+            case 3: return column<WIDTH-1 && room+1<rooms ? room+1 : 0;
+        }
+        return 0;
+    }
+    int items() {
+        return (rooms-1)/WIDTH+crowd;
+    }
+    // Return where item i starts: every tenth room, then the crowd in room 1.
+    int itemRoom( int item ) {
+        return item<(rooms-1)/WIDTH ? 1+item*WIDTH : 1;
+    }
+    String itemKeyword( int item ) {
+        return item<(rooms-1)/WIDTH ? "lamp"+item : "candle"+item;
+    }
+    int zones() {
+        return (rooms-1+ZONE_ROOMS-1)/ZONE_ROOMS;
+    }
+    // Zone names sort in number order, so SoundZones gives zone n ID n+1.
+    String zoneName( int zone ) {
+        String number = "0000000"+zone;
+        return "zone"+number.substring( number.length()-7 );
+    }
+
+    // Write the map, items and sound zones into a directory.
+    void writeFiles( File dir ) throws IOException {
+        dir.mkdirs();
+        PrintWriter map = new PrintWriter( new BufferedWriter(new FileWriter(new File(dir, "hm_map.csv"))) );
+        for ( int i=0; i<rooms; i++ ) {
+            for ( int j=0; j<6; j++ ) map.print( exit(i, j)+"," );
+            map.println( name(i)+",\""+description(i)+"\"" );
+        }
+        map.close();
+        PrintWriter items = new PrintWriter( new BufferedWriter(new FileWriter(new File(dir, "hm_items.csv"))) );
+        for ( int i=0; i<items(); i++ ) {
+            items.println( itemRoom(i)+","+itemKeyword(i)+",a brass lamp,\"It is lamp number "+i+".\",true" );
+        }
+        items.close();
+        PrintWriter audio = new PrintWriter( new BufferedWriter(new FileWriter(new File(dir, SoundZones.FILE_NAME))) );
+        audio.println( "{ \"zones\": {" );
+        for ( int i=0; i<zones(); i++ ) {
+            audio.print( "  \""+zoneName(i)+"\": { \"soundFile\": \""+SOUNDS[i%SOUNDS.length]+"\", \"rooms\": [" );
+            for ( int room=1+i*ZONE_ROOMS; room<=(i+1)*ZONE_ROOMS && room<rooms; room++ ) {
+                audio.print( (room>1+i*ZONE_ROOMS ? ", " : "")+room );
+            }
+            audio.println( "] }"+(i+1<zones() ? "," : "") );
+        }
+        audio.println( "} }" );
+        audio.close();
+    }
+
+    // Build the map as a WorldTemplate without going through any files.
+    WorldTemplate toTemplate() {
+        String[] names = new String[ rooms ];
+        String[] descs = new String[ rooms ];
+        int[] exits = new int[ rooms*6 ];
+        for ( int i=0; i<rooms; i++ ) {
+            names[i] = name( i );
+            descs[i] = description( i );
+            for ( int j=0; j<6; j++ ) exits[i*6+j] = exit( i, j );
+        }
+        int n = items();
+        int[] location = new int[ n ];
+        String[] keyword = new String[ n ];
+        String[] itemName = new String[ n ];
+        String[] itemDesc = new String[ n ];
+        boolean[] getable = new boolean[ n ];
+        for ( int i=0; i<n; i++ ) {
+            location[i] = itemRoom( i );
+            keyword[i] = itemKeyword( i );
+            itemName[i] = "a brass lamp";
+            itemDesc[i] = "It is lamp number "+i+".";
+            getable[i] = true;
+        }
+        String[] zoneNames = new String[ zones()+1 ];
+        String[] zoneSounds = new String[ zones()+1 ];
+        for ( int i=0; i<zones(); i++ ) {
+            zoneNames[i+1] = zoneName( i );
+            zoneSounds[i+1] = SOUNDS[ i%SOUNDS.length ];
+        }
+        int[] roomZones = new int[ rooms ];
+        for ( int i=1; i<rooms; i++ ) roomZones[i] = (i-1)/ZONE_ROOMS+1;
+        SoundZones zones = new SoundZones( zoneNames, zoneSounds, roomZones );
+        return new WorldTemplate( rooms, names, descs, zones, exits,
+                                  n, location, keyword, itemName, itemDesc, getable );
+    }
+
+    public static void main( String[] argv ) throws IOException {
+        if ( argv.length<1 ) {
+            System.out.println( "Usage: java MapGenerator rooms [directory]" );
+            return;
+        }
+        MapGenerator generator = new MapGenerator( Integer.parseInt(argv[0]) );
+        File dir = new File( argv.length>1 ? argv[1] : "." );
+        generator.writeFiles( dir );
+        System.out.println( "Wrote "+generator.rooms+" rooms and "+generator.items()+" items to "+dir );
+    }
+}
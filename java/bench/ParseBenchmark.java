@@ -0,0 +1,47 @@
+/*
+    Cost of splitting up a command: the old StringTokenizer based Parse,
+    as it used to be written, against a reused CommandTokenizer.  Watch
+    the B/op column; the tokenizer should not allocate at all.
+*/
+
+import java.util.StringTokenizer;
+
+public class ParseBenchmark {
+    static final String[] COMMANDS = {
+        "n", "look", "get book", "take the old book", "examine painting",
+        "drop all", "look at the raven", "put book in box", "verbose off"
+    };
+
+    // The old Parse.parse(): last word wins as the noun.
+    static int oldParse( String s ) {
+        String verb = null;
+        String noun = null;
+        StringTokenizer st = new StringTokenizer(s);
+        while (st.hasMoreTokens()) {
+            String next = st.nextToken();
+            if (verb==null) {
+                verb=next;
+            } else {
+                noun=next;
+            }
+        }
+        return verb.length() + (noun==null ? 0 : noun.length());
+    }
+
+    public static void main( String[] argv ) {
+        final CommandTokenizer tokenizer = new CommandTokenizer();
+        final int n = COMMANDS.length;
+
+        Bench.run( "new Parse/StringTokenizer", new Bench.Task() {
+            public long run( int i ) {
+                return oldParse( COMMANDS[i%n] );
+            }
+        }, 1000000 );
+        Bench.run( "reused CommandTokenizer", new Bench.Task() {
+            public long run( int i ) {
+                tokenizer.tokenize( COMMANDS[i%n] );
+                return tokenizer.getVerbEnd() + (tokenizer.nounIs("book") ? 1 : 0);
+            }
+        }, 1000000 );
+    }
+}
@@ -0,0 +1,196 @@
+/*
+    Round trips through GameServer over localhost, with most of the
+    connections idle the way most players are.  For each server mode in
+    turn (event loops, a virtual thread per session, a pool of platform
+    threads) it starts a server on a free port, opens the idle connections
+    (each gets its welcome and then says nothing), then has a few active
+    clients, one thread each, play the stock walkthrough over and over,
+    timing each command from sending the line to reading back the prompt.
+    The same load goes to every mode, and a table at the end compares
+    throughput, latency, server threads and heap.
+
+        java ServerBenchmark [-mode loop,virtual,platform] [-idle 2000]
+                             [-active 8] [-seconds 10] [-loops cores]
+                             [-pool idle+active]
+
+    The platform pool is big enough for every connection unless -pool says
+    otherwise; with fewer threads than connections the players past the
+    pool wait for a thread, and the table shows how many never got one.
+    Without Java 21 "virtual" falls back to a platform thread per session.
+
+    Run from the java/ directory so the stock map and item files are found.
+    Each connection is a file descriptor at both ends, so the idle count
+    is limited by ulimit -n.
+*/
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Vector;
+
+public class ServerBenchmark {
+    static final byte[] PROMPT = GameServer.PROMPT.getBytes();
+
+    // Read from channel until the prompt comes back.
+    static void awaitPrompt( SocketChannel channel, ByteBuffer buf ) throws IOException {
+        int matched = 0;
+        for (;;) {
+            buf.clear();
+            if ( channel.read(buf)<0 ) throw new EOFException( "Server hung up" );
+            buf.flip();
+            while ( buf.hasRemaining() ) {
+                byte b = buf.get();
+                matched = b==PROMPT[matched] ? matched+1 : b==PROMPT[0] ? 1 : 0;
+                if ( matched==PROMPT.length ) {
+                    if ( !buf.hasRemaining() ) return;
+                    matched = 0;
+                }
+            }
+        }
+    }
+
+    static SocketChannel connect( int port, ByteBuffer buf ) throws IOException {
+        SocketChannel channel = SocketChannel.open( new InetSocketAddress("localhost", port) );
+        channel.socket().setTcpNoDelay( true );
+        if ( buf!=null ) awaitPrompt( channel, buf );
+        return channel;
+    }
+
+    // What one mode did.
+    static class Result {
+        String		mode;
+        LatencyHistogram	latency = new LatencyHistogram();
+        int		served;		// Connections with a game going.
+        int		starved;	// Active players who never got one.
+        int		threads;	// Live platform threads in the JVM.
+        long		heap;		// Heap in use, idle connections open.
+    }
+
+    static class Player extends Thread {
+        int		port;
+        long		stopAt;
+        LatencyHistogram	latency = new LatencyHistogram();
+        IOException	failure;
+
+        Player( int port, long stopAt ) {
+            this.port = port;
+            this.stopAt = stopAt;
+        }
+        public void run() {
+            ByteBuffer buf = ByteBuffer.allocate( 8192 );
+            String[] script = LoadGenerator.WALKTHROUGH;
+            try {
+                SocketChannel channel = connect( port, buf );
+                for ( int i=0; System.nanoTime()<stopAt; i++ ) {
+                    ByteBuffer line = ByteBuffer.wrap( (script[i%script.length]+"\r\n").getBytes() );
+                    long start = System.nanoTime();
+                    while ( line.hasRemaining() ) channel.write( line );
+                    awaitPrompt( channel, buf );
+                    latency.record( System.nanoTime()-start );
+                    if ( i%script.length==script.length-1 ) {
+                        // Start over in a new game.
+                        channel.close();
+                        channel = connect( port, buf );
+                    }
+                }
+                channel.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    // Put one server mode under the load and return how it did.
+    static Result run( WorldTemplate world, String mode, int loops, int pool,
+                       int idle, int active, int seconds, PrintStream out ) throws Exception {
+        Result result = new Result();
+        result.mode = mode;
+        GameServer server = GameServer.start( new GameEngine(), world, 0, mode, loops, pool );
+        int port = server.getPort();
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long before = rt.totalMemory()-rt.freeMemory();
+
+        // Idle players: connect and wait (a while) for the server to take them all.
+        SocketChannel[] idlers = new SocketChannel[ idle ];
+        for ( int i=0; i<idle; i++ ) idlers[i] = connect( port, null );
+        long giveUp = System.currentTimeMillis()+10000;
+        while ( server.getConnections()<Math.min(idle, pool) && System.currentTimeMillis()<giveUp ) {
+            Thread.sleep( 10 );
+        }
+        System.gc();
+        result.heap = Math.max( 0, rt.totalMemory()-rt.freeMemory()-before );
+        result.threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        long stopAt = System.nanoTime()+seconds*1000000000L;
+        Player[] players = new Player[ active ];
+        for ( int i=0; i<active; i++ ) (players[i] = new Player( port, stopAt )).start();
+        Thread.sleep( seconds*500L );
+        result.served = server.getConnections();
+        Thread.sleep( seconds*500L );
+        // Hang up the idlers, so players stuck waiting for a pool thread get one and finish.
+        for ( int i=0; i<idle; i++ ) idlers[i].close();
+        for ( int i=0; i<active; i++ ) {
+            players[i].join();
+            if ( players[i].failure!=null ) out.println( mode+" player "+i+" failed: "+players[i].failure );
+            if ( players[i].latency.getCount()==0 ) result.starved++;
+            result.latency.add( players[i].latency );
+        }
+        server.shutdown();
+        out.println( Bench.pad(mode, 10)+result.latency.getCount()+" commands" );
+        return result;
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        String modes = "loop,virtual,platform";
+        int idle = 2000, active = 8, seconds = 10, pool = -1;
+        int loops = Runtime.getRuntime().availableProcessors();
+        for ( int i=0; i+1<argv.length; i+=2 ) {
+            if ( argv[i].equals("-mode") ) modes = argv[i+1];
+            else if ( argv[i].equals("-idle") ) idle = Integer.parseInt( argv[i+1] );
+            else if ( argv[i].equals("-active") ) active = Integer.parseInt( argv[i+1] );
+            else if ( argv[i].equals("-seconds") ) seconds = Integer.parseInt( argv[i+1] );
+            else if ( argv[i].equals("-loops") ) loops = Integer.parseInt( argv[i+1] );
+            else if ( argv[i].equals("-pool") ) pool = Integer.parseInt( argv[i+1] );
+        }
+        if ( pool<0 ) pool = idle+active;
+        PrintStream out = System.out;
+        System.setOut( WorldLoadBenchmark.quiet );
+        WorldTemplate world = WorldTemplate.get( new File(".").toURI().toURL() );
+        System.setOut( out );
+        if ( !world.isLoaded() ) {
+            out.println( "Run this from the directory with hm_map.csv and hm_items.csv." );
+            return;
+        }
+        out.println( idle+" idle and "+active+" active players, "+seconds+"s per mode, "
+                     +loops+" event loops, "+pool+" pool threads, Java "+System.getProperty("java.version") );
+
+        Vector results = new Vector();
+        String[] list = modes.split( "," );
+        for ( int m=0; m<list.length; m++ ) {
+            results.add( run(world, list[m], loops, pool, idle, active, seconds, out) );
+        }
+
+        out.println();
+        out.println( Bench.pad("mode", 10)+Bench.pad("cmds/s", 10)+Bench.pad("mean us", 10)
+                     +Bench.pad("p50 us", 10)+Bench.pad("p99 us", 10)+Bench.pad("p99.9 us", 10)
+                     +Bench.pad("served", 8)+Bench.pad("starved", 9)+Bench.pad("threads", 9)+"heap/conn" );
+        for ( int m=0; m<results.size(); m++ ) {
+            Result r = (Result)results.elementAt( m );
+            LatencyHistogram h = r.latency;
+            out.println( Bench.pad(r.mode, 10)
+                         +Bench.pad( Bench.format(h.getCount()/(double)seconds), 10 )
+                         +Bench.pad( LoadGenerator.micros((long)h.getMean()), 10 )
+                         +Bench.pad( LoadGenerator.micros(h.getValueAtPercentile(50)), 10 )
+                         +Bench.pad( LoadGenerator.micros(h.getValueAtPercentile(99)), 10 )
+                         +Bench.pad( LoadGenerator.micros(h.getValueAtPercentile(99.9)), 10 )
+                         +Bench.pad( String.valueOf(r.served), 8 )
+                         +Bench.pad( String.valueOf(r.starved), 9 )
+                         +Bench.pad( String.valueOf(r.threads), 9 )
+                         +r.heap/Math.max(1, idle) );
+        }
+        out.println( "(heap/conn and threads count both ends of each connection; the clients use one thread each.)" );
+    }
+}
@@ -0,0 +1,115 @@
+/*
+    How long does it take to get a world ready to play?  Loads the stock
+    map, then generated maps of growing size, both from the CSV files and
+    from a compiled snapshot (WorldSnapshot), and reports the time and
+    garbage per load.  A map the CSV loader rejects is reported as n/a.
+
+    Run from the java/ directory so the stock map and item files are found.
+    Scratch files go in a temporary directory and are deleted afterwards.
+*/
+
+import java.io.*;
+import java.net.URL;
+
+public class WorldLoadBenchmark {
+    private static final PrintStream out = System.out;
+    static final PrintStream quiet = new PrintStream( new OutputStream() {
+        public void write( int b ) {}
+        public void write( byte[] b, int off, int len ) {}
+    } );
+
+    // Time loading the world in dir both ways.
+    static void compare( String name, final File dir, int loads ) throws IOException {
+        final URL docBase = dir.toURI().toURL();
+        final File snapshot = new File( dir, WorldSnapshot.FILE_NAME );
+        WorldTemplate csv = null;
+        System.setOut( quiet );
+        try {
+            csv = new WorldTemplate( docBase );
+        } catch (RuntimeException e) {
+            // The CSV loader couldn't cope.
+        } finally {
+            System.setOut( out );
+        }
+        if ( csv==null || !csv.isLoaded() ) {
+            out.println( Bench.pad(name+" from CSV", 40)+"n/a" );
+        } else {
+            Bench.run( name+" from CSV", new Bench.Task() {
+                public long run( int i ) {
+                    System.setOut( quiet );
+                    try {
+                        return new WorldTemplate( docBase ).getNumLocations();
+                    } finally {
+                        System.setOut( out );
+                    }
+                }
+            }, loads );
+        }
+        Bench.run( name+" from snapshot", new Bench.Task() {
+            public long run( int i ) {
+                try {
+                    return WorldSnapshot.load( snapshot ).getNumLocations();
+                } catch (IOException e) {
+                    throw new RuntimeException( e.toString() );
+                }
+            }
+        }, loads );
+        out.println( Bench.pad("", 40)+"snapshot is "+snapshot.length()+" bytes" );
+    }
+
+    static void writeSnapshot( WorldTemplate world, File dir ) throws IOException {
+        OutputStream stream = new FileOutputStream( new File(dir, WorldSnapshot.FILE_NAME) );
+        try {
+            WorldSnapshot.write( world, stream );
+        } finally {
+            stream.close();
+        }
+    }
+
+    static void delete( File dir ) {
+        File[] files = dir.listFiles();
+        for ( int i=0; files!=null && i<files.length; i++ ) files[i].delete();
+        dir.delete();
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        File scratch = File.createTempFile( "worldload", "" );
+        scratch.delete();
+        try {
+            // The stock map: copy the CSV files and compile them next to the copies.
+            File stock = new File( scratch, "stock" );
+            stock.mkdirs();
+            copy( new File("hm_map.csv"), new File(stock, "hm_map.csv") );
+            copy( new File("hm_items.csv"), new File(stock, "hm_items.csv") );
+            copy( new File(SoundZones.FILE_NAME), new File(stock, SoundZones.FILE_NAME) );
+            System.setOut( quiet );
+            WorldTemplate world = new WorldTemplate( stock.toURI().toURL() );
+            System.setOut( out );
+            writeSnapshot( world, stock );
+            compare( "stock ("+world.getNumLocations()+" rooms)", stock, 200 );
+
+            int[] sizes = { 1000, 10000, 100000 };
+            for ( int i=0; i<sizes.length; i++ ) {
+                File dir = new File( scratch, "rooms"+sizes[i] );
+                MapGenerator generator = new MapGenerator( sizes[i] );
+                generator.writeFiles( dir );
+                writeSnapshot( generator.toTemplate(), dir );
+                compare( sizes[i]+" rooms", dir, Math.max(1, 100000/sizes[i]) );
+                delete( dir );
+            }
+            delete( stock );
+        } finally {
+            scratch.delete();
+        }
+    }
+
+    static void copy( File from, File to ) throws IOException {
+        InputStream in = new FileInputStream( from );
+        OutputStream copy = new FileOutputStream( to );
+        byte[] buf = new byte[8192];
+        int n;
+        while ( (n = in.read(buf))>0 ) copy.write( buf, 0, n );
+        in.close();
+        copy.close();
+    }
+}
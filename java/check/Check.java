@@ -0,0 +1,56 @@
+/*
+    Bare bones self-checks for the parts of the game that are easy to get
+    subtly wrong.  There is no test framework; each check is a class in
+    this directory with a main() that tries things, reports anything that
+    isn't as expected through Check, and exits 1 if something failed.
+    Run one, or run them all with
+
+        javac -d /tmp/hm *.java bench/*.java check/*.java
+        cd java; java -cp /tmp/hm Check
+
+    from the java/ directory, so the stock map and item files are found.
+*/
+
+import java.lang.reflect.Method;
+
+public class Check {
+    // Every check, in the order "java Check" runs them.
+    static final String[] ALL = {
+        "TokenizerCheck",
+        "StreamClipCheck",
+        "SaveGameCheck",
+        "JournalCheck",
+        "ServerCheck",
+        "RouteCheck",
+    };
+
+    private static int	checked = 0;
+    private static int	failed = 0;
+
+    // Note a failure unless ok.
+    public static void expect( boolean ok, String what ) {
+        checked++;
+        if ( ok ) return;
+        failed++;
+        System.out.println( "FAILED: "+what );
+    }
+    // Note a failure unless two things are equal (either may be null).
+    public static void equal( Object expected, Object actual, String what ) {
+        boolean same = expected==null ? actual==null : expected.equals( actual );
+        expect( same, what+": expected "+expected+", got "+actual );
+    }
+    // Report, and exit 1 if anything failed.
+    public static void done( String name ) {
+        System.out.println( name+": "+(checked-failed)+" of "+checked+" checks passed." );
+        if ( failed>0 ) System.exit( 1 );
+    }
+
+    // Run every check (each exits on failure, so the first to fail stops the run).
+    public static void main( String[] argv ) throws Exception {
+        for ( int i=0; i<ALL.length; i++ ) {
+            checked = failed = 0;
+            Method main = Class.forName( ALL[i] ).getMethod( "main", new Class[] { String[].class } );
+            main.invoke( null, new Object[] { new String[0] } );
+        }
+    }
+}
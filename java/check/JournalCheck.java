@@ -0,0 +1,110 @@
+/*
+    SessionJournal: games played through a journal, with a snapshot part
+    way and more play after it, must come back from the directory as they
+    were, saved games and all; a second snapshot must leave one journal
+    file; and a closed player must stay gone.
+*/
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+
+public class JournalCheck {
+    static final String[] COMMANDS = {
+        "n", "s", "e", "w", "u", "d", "get all", "drop all", "look", "verbose off",
+        "save", "save x", "restore", "drop all"
+    };
+
+    // A game's state and its saved games, as a string to compare.
+    static String state( SessionJournal.Player player ) {
+        GameSession session = player.getSession();
+        String state = SaveGameCheck.state( session );
+        byte[] saved = session.getSaved( "X" );
+        return saved==null ? state : state+Arrays.toString( saved );
+    }
+
+    // Return what the directory's journal files are, in order.
+    static Vector journals( File dir ) {
+        Vector names = new Vector();
+        String[] all = dir.list();
+        Arrays.sort( all );
+        for ( int i=0; i<all.length; i++ ) {
+            if ( all[i].startsWith(SessionJournal.JOURNAL) ) names.add( all[i] );
+        }
+        return names;
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        URL docBase = new File( "." ).toURI().toURL();
+        WorldTemplate world = WorldTemplate.get( docBase );
+        GameEngine engine = new GameEngine();
+        File dir = File.createTempFile( "journal", "" );
+        dir.delete();
+        dir.mkdir();
+        try {
+            SessionJournal journal = new SessionJournal( dir, world, engine, true, 0 );
+            Vector players = new Vector();
+            for ( int i=0; i<50; i++ ) players.add( journal.open() );
+            Random random = new Random( 2 );
+            StringBuffer out = new StringBuffer();
+            long last = 0;
+            SessionJournal.Player gone = null;
+            for ( int k=0; k<5000; k++ ) {
+                SessionJournal.Player player = (SessionJournal.Player)players.elementAt( random.nextInt(players.size()) );
+                out.setLength( 0 );
+                last = journal.play( player, COMMANDS[random.nextInt(COMMANDS.length)], out );
+                if ( k==2500 ) journal.snapshot();
+                if ( k==3500 ) {
+                    gone = (SessionJournal.Player)players.remove( 5 );
+                    journal.close( gone );
+                }
+            }
+            journal.awaitDurable( last );
+            Hashtable want = new Hashtable();
+            for ( int i=0; i<players.size(); i++ ) {
+                SessionJournal.Player player = (SessionJournal.Player)players.elementAt( i );
+                want.put( Integer.valueOf(player.getId()), state(player) );
+            }
+            journal.close();
+
+            // Snapshot plus the journal after it.
+            SessionJournal again = new SessionJournal( dir, world, engine, true, 0 );
+            Vector got = again.getPlayers();
+            Check.equal( Integer.valueOf(want.size()), Integer.valueOf(got.size()), "players recovered" );
+            int wrong = 0;
+            for ( int i=0; i<got.size(); i++ ) {
+                SessionJournal.Player player = (SessionJournal.Player)got.elementAt( i );
+                if ( !state(player).equals(want.get(Integer.valueOf(player.getId()))) ) wrong++;
+            }
+            Check.equal( Integer.valueOf(0), Integer.valueOf(wrong), "recovered games that differ" );
+            Check.expect( again.getPlayer(gone.getId())==null, "a closed player isn't recovered" );
+
+            // Snapshot only.
+            again.snapshot();
+            Check.equal( Integer.valueOf(1), Integer.valueOf(journals(dir).size()), "journal files left by a snapshot" );
+            Check.expect( !new File(dir, "snapshot.tmp").exists(), "no snapshot.tmp left behind" );
+            again.close();
+            SessionJournal third = new SessionJournal( dir, world, engine, true, 0 );
+            got = third.getPlayers();
+            wrong = 0;
+            for ( int i=0; i<got.size(); i++ ) {
+                SessionJournal.Player player = (SessionJournal.Player)got.elementAt( i );
+                if ( !state(player).equals(want.get(Integer.valueOf(player.getId()))) ) wrong++;
+            }
+            Check.equal( Integer.valueOf(want.size()), Integer.valueOf(got.size()), "players recovered from the snapshot" );
+            Check.equal( Integer.valueOf(0), Integer.valueOf(wrong), "games from the snapshot that differ" );
+            SessionJournal.Player fresh = third.open();
+            Check.expect( !want.containsKey(Integer.valueOf(fresh.getId())) && fresh.getId()!=gone.getId(),
+                          "new players get a new id" );
+            third.close();
+        } finally {
+            File[] files = dir.listFiles();
+            for ( int i=0; files!=null && i<files.length; i++ ) files[i].delete();
+            dir.delete();
+        }
+        Check.done( "JournalCheck" );
+    }
+}
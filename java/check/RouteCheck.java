@@ -0,0 +1,162 @@
+/*
+    Routes: a map too big for a table (more than TABLE_LIMIT rooms) must
+    give the same next steps and distances searched as it would from a
+    table, and both must agree with a plain breadth-first search, with
+    far more destinations asked for than the cache keeps.  findRoom must
+    pick the nearest of several rooms with a name, fall back to names
+    containing it, and not care what the default locale is.
+*/
+
+import java.io.File;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Random;
+
+public class RouteCheck {
+    // Return every room's distance from room "from", -1 where it can't be reached.
+    static int[] distances( WorldTemplate world, int from ) {
+        int[] moves = new int[ world.getNumLocations() ];
+        for ( int r=0; r<moves.length; r++ ) moves[r] = -1;
+        int[] queue = new int[ moves.length ];
+        int head = 0, tail = 0;
+        queue[ tail++ ] = from;
+        moves[from] = 0;
+        while ( head<tail ) {
+            int room = queue[ head++ ];
+            for ( int d=Exit.NORTH; d<=Exit.DOWN; d++ ) {
+                int to = world.getExitTarget( room, d );
+                if ( to!=0 && moves[to]<0 ) {
+                    moves[to] = moves[room]+1;
+                    queue[ tail++ ] = to;
+                }
+            }
+        }
+        return moves;
+    }
+
+    static final int NONE = -1, UNREACHABLE = Integer.MAX_VALUE;
+
+    // How far findRoom(name, from) should go: NONE if there is no such
+    // room, UNREACHABLE if none can be got to, otherwise how many moves
+    // away the nearest one is.  moves are distances() from there.
+    static int nearest( WorldTemplate world, String name, int[] moves ) {
+        String key = name.trim().toUpperCase( Locale.ROOT );
+        if ( key.length()==0 ) return NONE;
+        boolean exact = false;
+        for ( int r=1; r<moves.length; r++ ) {
+            if ( world.getLocation(r).getName().toUpperCase(Locale.ROOT).equals(key) ) exact = true;
+        }
+        int found = NONE;
+        for ( int r=1; r<moves.length; r++ ) {
+            String room = world.getLocation( r ).getName().toUpperCase( Locale.ROOT );
+            if ( exact ? !room.equals(key) : room.indexOf(key)<0 ) continue;
+            if ( found==NONE ) found = UNREACHABLE;
+            if ( moves[r]>=0 && moves[r]<found ) found = moves[r];
+        }
+        return found;
+    }
+
+    // Count the rooms findRoom(name, ...) gets wrong, starting from each room.
+    static int wrongRooms( WorldTemplate world, Routes routes, String name ) {
+        int wrong = 0;
+        for ( int from=1; from<world.getNumLocations(); from++ ) {
+            int[] moves = distances( world, from );
+            int want = nearest( world, name, moves );
+            int got = routes.findRoom( name, from );
+            if ( want==NONE ) {
+                if ( got!=-1 ) wrong++;
+            } else if ( want==UNREACHABLE ) {
+                if ( got!=0 ) wrong++;
+            } else if ( got<=0 || moves[got]!=want ) {
+                wrong++;
+            }
+        }
+        return wrong;
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        // Table against cache against a plain search, on a big map.
+        WorldTemplate big = new MapGenerator( 3000 ).toTemplate();
+        int rooms = big.getNumLocations();
+        Check.expect( rooms>Routes.TABLE_LIMIT, "big map is too big for a table" );
+        Routes table = new Routes( big, big.getExitTable(), rooms );
+        Routes cache = new Routes( big, big.getExitTable() );
+        Random random = new Random( 3 );
+        int differ = 0;
+        for ( int i=0; i<50000; i++ ) {
+            int from = 1+random.nextInt( rooms-1 ), to = 1+random.nextInt( rooms-1 );
+            if ( table.nextStep(from, to)!=cache.nextStep(from, to) ) differ++;
+        }
+        Check.equal( Integer.valueOf(0), Integer.valueOf(differ), "next steps that differ, table against cache" );
+        int wrong = 0;
+        for ( int i=0; i<200; i++ ) {
+            int from = 1+random.nextInt( rooms-1 );
+            int[] moves = distances( big, from );
+            for ( int j=0; j<20; j++ ) {
+                int to = 1+random.nextInt( rooms-1 );
+                if ( table.distance(from, to)!=moves[to] || cache.distance(from, to)!=moves[to] ) wrong++;
+            }
+        }
+        Check.equal( Integer.valueOf(0), Integer.valueOf(wrong), "distances that differ from a plain search" );
+        // A few destinations over and over, with the cache being churned in between.
+        for ( int i=0; i<Routes.CACHE_SIZE*4; i++ ) {
+            int to = i%3==0 ? 1+i%5 : 1+random.nextInt( rooms-1 );
+            int from = 1+random.nextInt( rooms-1 );
+            if ( table.nextStep(from, to)!=cache.nextStep(from, to) ) differ++;
+        }
+        Check.equal( Integer.valueOf(0), Integer.valueOf(differ), "next steps that differ after churning the cache" );
+        Check.equal( Integer.valueOf(Exit.UNDEFINED), Integer.valueOf(cache.nextStep(0, 5)), "no step from room 0" );
+        Check.equal( Integer.valueOf(Exit.UNDEFINED), Integer.valueOf(cache.nextStep(5, rooms)), "no step off the map" );
+        Check.equal( Integer.valueOf(0), Integer.valueOf(cache.distance(7, 7)), "no moves to where you are" );
+
+        // The stock map both ways, every pair.
+        URL docBase = new File( "." ).toURI().toURL();
+        WorldTemplate world = WorldTemplate.get( docBase );
+        Routes routes = world.getRoutes();
+        Routes searched = new Routes( world, world.getExitTable(), 0 );
+        wrong = 0;
+        for ( int from=1; from<world.getNumLocations(); from++ ) {
+            int[] moves = distances( world, from );
+            for ( int to=1; to<world.getNumLocations(); to++ ) {
+                if ( routes.distance(from, to)!=moves[to] || searched.distance(from, to)!=moves[to] ) wrong++;
+            }
+        }
+        Check.equal( Integer.valueOf(0), Integer.valueOf(wrong), "stock map distances that differ" );
+
+        // Names.
+        String[] names = {
+            "Foyer", "foyer", "  Hallway of Doors ", "Hallway", "hall", "Attic", "ballroom",
+            "portrait", "Room", "Library", "kitchen", "Dungeon", "", "   "
+        };
+        for ( int i=0; i<names.length; i++ ) {
+            Check.equal( Integer.valueOf(0), Integer.valueOf(wrongRooms(world, routes, names[i])), "rooms wrong for '"+names[i]+"'" );
+            Check.equal( Integer.valueOf(0), Integer.valueOf(wrongRooms(world, searched, names[i])), "rooms wrong for '"+names[i]+"' (no table)" );
+        }
+        Check.equal( Integer.valueOf(1), Integer.valueOf(routes.findRoom("foyer", 1)), "the room you're in" );
+        Check.equal( Integer.valueOf(-1), Integer.valueOf(routes.findRoom("Dungeon", 1)), "no such room" );
+        int hallway = routes.findRoom( "Hallway", 1 );
+        Check.expect( world.getLocation(hallway).getName().equals("Hallway"), "HALLWAY means a Hallway, not a Portrait Hallway" );
+        Check.expect( world.getLocation(routes.findRoom("Portrait Hall", 1)).getName().equals("Portrait Hallway"),
+                      "part of a name" );
+        Check.equal( Integer.valueOf(0), Integer.valueOf(wrongRooms(big, cache, "Room "+(rooms-1))), "big map, exact name" );
+
+        // Locales that upper case differently, both while loading and asking.
+        Locale was = Locale.getDefault();
+        try {
+            Locale.setDefault( new Locale("tr", "TR") );
+            Routes turkish = new Routes( world, world.getExitTable() );
+            String[] dotted = { "Library", "library", "kitchen", "Piano Room", "Servants Quarters", "attic" };
+            for ( int i=0; i<dotted.length; i++ ) {
+                Check.expect( routes.findRoom(dotted[i], 1)>0, "'"+dotted[i]+"' found in Turkish" );
+            }
+            Locale.setDefault( Locale.ENGLISH );
+            for ( int i=0; i<dotted.length; i++ ) {
+                Check.expect( turkish.findRoom(dotted[i], 1)>0, "'"+dotted[i]+"' found in English, loaded in Turkish" );
+            }
+        } finally {
+            Locale.setDefault( was );
+        }
+
+        Check.done( "RouteCheck" );
+    }
+}
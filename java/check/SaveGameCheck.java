@@ -0,0 +1,137 @@
+/*
+    SaveGame: random games saved and restored must come back the same and
+    go on the same; saves that are cut short, for another map, or list a
+    holder twice must be refused without touching the game; and a big map
+    with a changed list in nearly every room must fit maxSize().
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class SaveGameCheck {
+    static final String[] COMMANDS = {
+        "n", "s", "e", "w", "u", "d", "get all", "drop all", "get all", "look", "verbose off", "verbose on"
+    };
+
+    // Everything a save should keep, as a string to compare.
+    static String state( GameSession session ) {
+        CreateWorld player = session.getPlayer();
+        WorldTemplate world = player.getWorld();
+        StringBuffer state = new StringBuffer();
+        state.append( session.getLocation().getIndex() ).append( session.isVerbose() ).append( player.getItems() );
+        for ( int r=0; r<world.getNumLocations(); r++ ) {
+            Location room = world.getLocation( r );
+            state.append( r ).append( player.beenHere(room) ).append( player.getItems(room) );
+        }
+        return state.toString();
+    }
+
+    // Restore saved into a new game, and return the error, or null if it worked.
+    static String refused( WorldTemplate world, byte[] saved ) {
+        GameSession session = new GameSession( new CreateWorld(world) );
+        String before = state( session );
+        try {
+            SaveGame.restore( session, saved );
+            return null;
+        } catch (IOException e) {
+            Check.equal( before, state(session), "game untouched by a refused restore" );
+            return e.getMessage();
+        }
+    }
+
+    // Hand-build a save for the stock map with the given holders (room, items...).
+    static byte[] saveWith( WorldTemplate world, int[][] holders ) {
+        ByteBuffer buf = ByteBuffer.allocate( 1024 );
+        buf.putInt( SaveGame.MAGIC|SaveGame.VERSION );
+        SaveGame.putVarint( buf, world.getNumLocations() );
+        SaveGame.putVarint( buf, world.getNumItems() );
+        buf.put( (byte)0 );
+        SaveGame.putVarint( buf, 1 );		// In room 1,
+        SaveGame.putVarint( buf, 0 );		// been nowhere.
+        SaveGame.putVarint( buf, holders.length );
+        for ( int h=0; h<holders.length; h++ ) {
+            SaveGame.putVarint( buf, holders[h][0] );
+            SaveGame.putVarint( buf, holders[h].length-1 );
+            for ( int i=1; i<holders[h].length; i++ ) SaveGame.putVarint( buf, holders[h][i] );
+        }
+        byte[] saved = new byte[ buf.position() ];
+        buf.flip();
+        buf.get( saved );
+        return saved;
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        URL docBase = new File( "." ).toURI().toURL();
+        WorldTemplate world = WorldTemplate.get( docBase );
+        GameEngine engine = new GameEngine();
+
+        // Random games round trip.
+        Random random = new Random( 1 );
+        int mismatched = 0, diverged = 0, biggest = 0;
+        for ( int g=0; g<200; g++ ) {
+            GameSession game = new GameSession( new CreateWorld(world) );
+            StringBuffer out = new StringBuffer();
+            for ( int i=random.nextInt(200); i>0; i-- ) engine.textEntered( game, COMMANDS[random.nextInt(COMMANDS.length)], out );
+            byte[] saved = SaveGame.save( game );
+            biggest = Math.max( biggest, saved.length );
+            GameSession copy = new GameSession( new CreateWorld(world) );
+            SaveGame.restore( copy, saved );
+            if ( !state(game).equals(state(copy)) ) mismatched++;
+            for ( int i=0; i<50; i++ ) {
+                String command = COMMANDS[ random.nextInt(COMMANDS.length) ];
+                StringBuffer a = new StringBuffer(), b = new StringBuffer();
+                engine.textEntered( game, command, a );
+                engine.textEntered( copy, command, b );
+                if ( !a.toString().equals(b.toString()) ) diverged++;
+            }
+        }
+        Check.equal( Integer.valueOf(0), Integer.valueOf(mismatched), "restored games that differ" );
+        Check.equal( Integer.valueOf(0), Integer.valueOf(diverged), "commands that went differently after a restore" );
+        Check.expect( biggest<=SaveGame.maxSize(world), "stock saves fit maxSize(world)" );
+
+        // Bad saves.
+        byte[] fresh = SaveGame.save( new GameSession(new CreateWorld(world)) );
+        Check.expect( refused(world, new byte[] { 1, 2, 3 })!=null, "junk is refused" );
+        byte[] cut = new byte[ fresh.length-1 ];
+        System.arraycopy( fresh, 0, cut, 0, cut.length );
+        Check.expect( refused(world, cut)!=null, "a cut short save is refused" );
+        Check.expect( refused(new MapGenerator(100).toTemplate(), fresh)!=null, "a save for another map is refused" );
+        Check.equal( null, refused(world, saveWith(world, new int[][] { {0}, {2, 3}, {3} })), "a good hand-built save" );
+        Check.equal( "Two inventories in saved game",
+                     refused(world, saveWith(world, new int[][] { {0, 3}, {0} })), "two inventories" );
+        Check.equal( "Room 2 is listed twice in saved game",
+                     refused(world, saveWith(world, new int[][] { {0}, {2, 3}, {2} })), "a room listed twice" );
+
+        // A big map with a list in nearly every room.
+        WorldTemplate big = new MapGenerator( 3000 ).toTemplate();
+        GameSession game = new GameSession( new CreateWorld(big) );
+        CreateWorld player = game.getPlayer();
+        for ( int r=1; r<big.getNumLocations(); r++ ) {
+            player.setLocation( big.getLocation(r) );
+            player.dropAll();
+        }
+        Check.expect( player.getChangedItems()==null, "DROP ALL with nothing held changes no room" );
+        for ( int r=1; r<big.getNumLocations(); r++ ) {
+            player.setLocation( big.getLocation(r) );
+            player.takeAll();
+        }
+        for ( int r=1; r<big.getNumLocations(); r++ ) {
+            Location room = big.getLocation( r );
+            player.setLocation( room );
+            if ( player.getItems().size()>0 ) player.dropAll();
+            player.addItem( room, big.getItem(0) );
+            player.removeItem( room, big.getItem(0) );
+        }
+        byte[] saved = SaveGame.save( game );
+        Check.expect( saved.length<=SaveGame.maxSize(game), "a big save fits maxSize(session)" );
+        Check.expect( SaveGame.maxSize(game)<=SaveGame.maxSize(big), "maxSize(session) is within maxSize(world)" );
+        GameSession copy = new GameSession( new CreateWorld(big) );
+        SaveGame.restore( copy, saved );
+        Check.equal( state(game), state(copy), "big map round trip" );
+
+        Check.done( "SaveGameCheck" );
+    }
+}
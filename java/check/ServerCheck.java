@@ -0,0 +1,98 @@
+/*
+    GameServer, in both event loop and thread per session mode: a command
+    that blows up hangs up on that player only, and a player who vanishes
+    part way through a batch of commands doesn't have the rest of them run.
+*/
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ServerCheck {
+    static final String[] MODES = { "loop", "platform" };
+
+    static AtomicInteger	counted = new AtomicInteger();
+    static SocketChannel	hangingUp;	// Reset by the HANGUP verb.
+
+    // Send a line (if any) and return what comes back, up to the prompt or
+    // the end, which shows as <EOF>.
+    static String talk( SocketChannel channel, String line ) throws IOException {
+        if ( line!=null ) channel.write( ByteBuffer.wrap((line+"\r\n").getBytes(StandardCharsets.ISO_8859_1)) );
+        ByteBuffer buf = ByteBuffer.allocate( 8192 );
+        StringBuffer text = new StringBuffer();
+        while ( !text.toString().endsWith(GameServer.PROMPT) ) {
+            buf.clear();
+            int n = channel.read( buf );
+            if ( n<0 ) return text+"<EOF>";
+            text.append( new String(buf.array(), 0, n, StandardCharsets.ISO_8859_1) );
+        }
+        return text.toString();
+    }
+
+    static SocketChannel connect( GameServer server ) throws IOException {
+        return SocketChannel.open( new InetSocketAddress("localhost", server.getPort()) );
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        URL docBase = new File( "." ).toURI().toURL();
+        WorldTemplate world = WorldTemplate.get( docBase );
+        GameEngine engine = new GameEngine();
+        engine.getVerbs().register( "BOOM", new Verb() {
+            public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+                throw new IllegalStateException( "Boom" );
+            }
+        } );
+        engine.getVerbs().register( "COUNT", new Verb() {
+            public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+                counted.incrementAndGet();
+            }
+        } );
+        // Reset the player's connection, so the server can't send the answer.
+        engine.getVerbs().register( "HANGUP", new Verb() {
+            public void execute( GameSession session, CommandTokenizer command, StringBuffer desc ) {
+                try {
+                    hangingUp.setOption( StandardSocketOptions.SO_LINGER, Integer.valueOf(0) );
+                    hangingUp.close();
+                    Thread.sleep( 100 );	// For the reset to get there.
+                } catch (Exception e) {
+                    throw new IllegalStateException( e.toString() );
+                }
+            }
+        } );
+
+        for ( int m=0; m<MODES.length; m++ ) {
+            String mode = MODES[ m ];
+            GameServer server = GameServer.start( engine, world, 0, mode, 1, 10 );
+            try {
+                SocketChannel a = connect( server );
+                SocketChannel b = connect( server );
+                Check.expect( talk(a, null).startsWith("Welcome"), mode+": A welcomed" );
+                Check.expect( talk(b, null).startsWith("Welcome"), mode+": B welcomed" );
+                String answer = talk( a, "boom" );
+                Check.expect( answer.indexOf(GameServer.BROKEN.replace("\n", "\r\n"))>=0, mode+": A told it broke" );
+                Check.expect( answer.endsWith("<EOF>"), mode+": A hung up on" );
+                Check.expect( talk(b, "look").endsWith(GameServer.PROMPT), mode+": B still playing" );
+                SocketChannel c = connect( server );
+                Check.expect( talk(c, null).startsWith("Welcome"), mode+": C welcomed after" );
+                a.close();
+
+                hangingUp = b;
+                counted.set( 0 );
+                b.write( ByteBuffer.wrap("hangup\r\ncount\r\ncount\r\ncount\r\n".getBytes(StandardCharsets.ISO_8859_1)) );
+                Thread.sleep( 500 );
+                Check.equal( Integer.valueOf(0), Integer.valueOf(counted.get()), mode+": commands run after B went" );
+                Check.expect( talk(c, "look").endsWith(GameServer.PROMPT), mode+": C still playing" );
+                c.close();
+            } finally {
+                server.shutdown();
+            }
+        }
+        Check.done( "ServerCheck" );
+    }
+}
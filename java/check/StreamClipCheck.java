@@ -0,0 +1,62 @@
+/*
+    StreamClip with sounds at the edges: an empty one (no frames), which
+    must not play at all, even looped, and one so short it fits in the
+    head, which loops until stopped.  Works without an audio device (the
+    clip plays into its null line).
+*/
+
+import java.io.*;
+import javax.sound.sampled.*;
+
+public class StreamClipCheck {
+    // Write a WAV file of the given number of 8 kHz mono 16 bit frames.
+    static File wav( int frames ) throws IOException {
+        AudioFormat format = new AudioFormat( 8000f, 16, 1, true, false );
+        byte[] samples = new byte[ frames*2 ];
+        for ( int i=0; i<frames; i++ ) samples[i*2+1] = (byte)(i%2==0 ? 0x10 : -0x10);
+        File file = File.createTempFile( "streamclip", ".wav" );
+        file.deleteOnExit();
+        AudioSystem.write( new AudioInputStream(new ByteArrayInputStream(samples), format, frames),
+                           AudioFileFormat.Type.WAVE, file );
+        return file;
+    }
+
+    // Count the live playback threads.
+    static int playbackThreads() {
+        Thread[] threads = new Thread[ Thread.activeCount()+10 ];
+        int count = 0;
+        for ( int i=Thread.enumerate(threads)-1; i>=0; i-- ) {
+            if ( threads[i].getName().startsWith("StreamClip") ) count++;
+        }
+        return count;
+    }
+
+    public static void main( String[] argv ) throws Exception {
+        StreamClip empty = new StreamClip( wav(0).toURI().toURL() );
+        empty.loop();
+        Thread.sleep( 200 );
+        Check.expect( !empty.isPlaying(), "an empty sound isn't playing after loop()" );
+        Check.expect( empty.getPlayback()==null, "an empty sound has no playback" );
+        Check.equal( Integer.valueOf(0), Integer.valueOf(playbackThreads()), "threads playing an empty sound" );
+        empty.play();
+        Check.expect( !empty.isPlaying(), "an empty sound isn't playing after play()" );
+        empty.stop();
+
+        StreamClip beep = new StreamClip( wav(400).toURI().toURL() );	// 50ms.
+        beep.loop();
+        Thread.sleep( 300 );
+        Check.expect( beep.isPlaying(), "a short sound is still looping" );
+        StreamClip.Playback playback = beep.getPlayback();
+        Check.expect( playback.loops>=3, "a short sound has gone round several times ("+playback.loops+")" );
+        beep.stop();
+        Thread.sleep( 200 );
+        Check.expect( !beep.isPlaying(), "a short sound stops when told to" );
+        Check.equal( Integer.valueOf(0), Integer.valueOf(playbackThreads()), "threads left after stop()" );
+
+        beep.play();
+        Thread.sleep( 300 );
+        Check.expect( !beep.isPlaying(), "a short sound played once finishes by itself" );
+
+        Check.done( "StreamClipCheck" );
+    }
+}
@@ -0,0 +1,54 @@
+/*
+    CommandTokenizer: verbs, articles, prepositions, noun and object
+    phrases, and matching a noun by the whole phrase or its last word.
+*/
+
+public class TokenizerCheck {
+    static CommandTokenizer command = new CommandTokenizer();
+
+    // Tokenize a line and check each part (null for "not there").
+    static void parts( String line, String verb, String noun, String preposition, String object ) {
+        command.tokenize( line );
+        Check.equal( verb, command.getVerb(), "verb of \""+line+"\"" );
+        Check.equal( noun, command.getNoun(), "noun of \""+line+"\"" );
+        Check.equal( preposition, command.getPreposition(), "preposition of \""+line+"\"" );
+        Check.equal( object, command.getObject(), "object of \""+line+"\"" );
+    }
+
+    public static void main( String[] argv ) {
+        parts( "get the brass key", "get", "brass key", null, null );
+        Check.expect( command.nounIs("key"), "\"brass key\" is a KEY (its last word)" );
+        Check.expect( command.nounIs("BRASS KEY"), "\"brass key\" is a BRASS KEY (the whole phrase)" );
+        Check.expect( !command.nounIs("brass"), "\"brass key\" isn't a BRASS" );
+        Check.expect( command.verbIs("GET"), "verb matches in any case" );
+
+        parts( "put key in box", "put", "key", "in", "box" );
+        Check.expect( command.prepositionIs("IN") && command.objectIs("box"), "put key IN box" );
+        parts( "put the key into an old box", "put", "key", "into", "old box" );
+        Check.expect( command.objectIs("box"), "object matches by its last word" );
+
+        // A preposition straight after the verb: the noun runs on to the next one.
+        parts( "look at slip of paper", "look", "slip of paper", "at", null );
+        Check.expect( command.nounIs("paper"), "\"slip of paper\" is PAPER" );
+        parts( "look at the old paper", "look", "old paper", "at", null );
+        parts( "look at book with lamp", "look", "book", "at", "lamp" );
+        parts( "go to hallway of doors", "go", "hallway of doors", "to", null );
+
+        parts( "", null, null, null, null );
+        Check.expect( !command.hasVerb(), "an empty line has no verb" );
+        parts( "   \t ", null, null, null, null );
+        Check.expect( !command.hasVerb(), "a blank line has no verb" );
+
+        // The first word is always the verb; articles after it are skipped.
+        parts( "the a an", "the", null, null, null );
+        Check.expect( !command.hasNoun(), "a line of only articles has no noun" );
+        parts( "look at the", "look", null, "at", null );
+
+        // An alias's noun replaces the typed one.
+        command.tokenize( "n" );
+        command.setNoun( "NORTH" );
+        Check.expect( command.nounIs("north") && command.getNounSource()!=command.getSource(), "alias noun" );
+
+        Check.done( "TokenizerCheck" );
+    }
+}